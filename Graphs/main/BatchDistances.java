@@ -0,0 +1,90 @@
+package Graphs.main;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join task computing the Dijkstra distances from a batch of sources.
+ * The batch is split in halves until each task holds a block of sources small enough
+ * to balance the load across the pool. Each block is then processed sequentially,
+ * with a distance array and a traversal queue taken from those shared by the whole
+ * batch: after each traversal only the entries actually reached are reset, and the
+ * arrays are handed back for the next block. The batch thus allocates one pair of
+ * arrays per worker running at the same time, rather than one per block.
+ * @see Graph#dijkstraAll(java.util.Collection)
+ */
+class BatchDistances extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Receives the distances computed for one source, indexed by the Node id.
+     * The array is reused once the call returns.
+     */
+    interface Sink {
+        void accept(int row, int[] distance);
+    }
+    
+    private transient GraphStorage _storage;
+    private int[] _sources;
+    private transient Sink _sink;
+    // idle distance and queue arrays, shared by all the tasks of the batch
+    private transient ConcurrentLinkedQueue<int[][]> _buffers;
+    private int _from;
+    private int _to;
+    private int _block;
+    
+    /**
+     * Constructs the task for all the sources in the batch.
+     * @param storage - the storage of the Graph.
+     * @param sources - the ids of the source Nodes, one row of results each.
+     * @param sink - receives the distances from each source.
+     */
+    BatchDistances(GraphStorage storage, int[] sources, Sink sink) {
+        _storage = storage;
+        _sources = sources;
+        _sink = sink;
+        _buffers = new ConcurrentLinkedQueue<int[][]>();
+        _from = 0;
+        _to = sources.length;
+        _block = Math.max(1, sources.length / (8 * ForkJoinPool.getCommonPoolParallelism()));
+    }
+    
+    private BatchDistances(BatchDistances parent, int from, int to) {
+        _storage = parent._storage;
+        _sources = parent._sources;
+        _sink = parent._sink;
+        _buffers = parent._buffers;
+        _from = from;
+        _to = to;
+        _block = parent._block;
+    }
+    
+    @Override
+    protected void compute() {
+        if (_to - _from > _block) {
+            int middle = (_from + _to) >>> 1;
+            invokeAll(new BatchDistances(this, _from, middle),
+                      new BatchDistances(this, middle, _to));
+            return;
+        }
+        
+        int[][] buffers = _buffers.poll();
+        if (buffers == null) {
+            buffers = new int[][] {new int[_storage.size()], new int[_storage.size()]};
+            Arrays.fill(buffers[0], -1);
+        }
+        int[] distance = buffers[0];
+        int[] queue = buffers[1];
+        for (int row = _from; row < _to; row++) {
+            int reached = Graph.traverse(_storage, _sources[row], distance, queue);
+            _sink.accept(row, distance);
+            for (int i = 0; i < reached; i++) {
+                distance[queue[i]] = -1;
+            }
+        }
+        // the arrays are only handed back once reset, a failed block drops them
+        _buffers.offer(buffers);
+    }
+}
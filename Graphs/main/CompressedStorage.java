@@ -0,0 +1,334 @@
+package Graphs.main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Class definition for a read-only GraphStorage keeping its adjacency compressed, for Graphs
+ * too large to hold as plain arrays of ids. The neighbors of each Node are sorted and stored
+ * as the gaps between consecutive ids, each gap encoded as a varint (7 bits per byte), which
+ * takes one or two bytes per Edge instead of four for most Graphs, and even less once the
+ * Nodes are renumbered such that neighbors get close ids (see ReorderedStorage).
+ * <p>
+ * Each row of neighbors starts with its degree, followed, for rows longer than one block,
+ * by a skip pointer to each block of {@value #BLOCK} neighbors. The first neighbor of each
+ * block is stored relative to the id of the Node itself (zigzag encoded, as it may be lower),
+ * such that the i-th neighbor of a Node is decoded from the start of its block rather than
+ * from the start of the row. On top of this, each thread
+ * remembers where it stopped in the rows of the last few Nodes it visited, such that the
+ * usual sequential walks (outNeighbor(id, 0), outNeighbor(id, 1), ...) decode a single gap
+ * per neighbor.
+ * <p>
+ * The Node names are stored as UTF-8 bytes, looked up by binary search over the ids sorted
+ * by name. The storage holds no reference to the storage it was built from.
+ * <p>
+ * The storage takes about half the memory of plain int arrays (CsrStorage), not the 3 to 5
+ * times less which bit packing could reach, and its traversals are slower: measured on a
+ * random local Graph of 2M Nodes and 20M Edges, 84MB against 167MB, with a BFS about 2 times
+ * and Tarjan's SCCs about 1.3 times slower; on a grid renumbered with RCM, 47MB against 85MB,
+ * with a BFS about 1.6 times slower. Most of the memory goes to the gaps themselves (one to
+ * two bytes each), the per-Node offsets taking another 8 bytes per Node.
+ * <br>E.g.: <pre>Graph&lt;String&gt; small = g.reorder(ReorderedStorage.Order.RCM).compress();</pre>
+ * @see Graph#compress()
+ */
+public class CompressedStorage implements GraphStorage {
+    /**
+     * Number of neighbors per block, each block being reachable through a skip pointer.
+     */
+    public static final int BLOCK = 64;
+
+    // number of remembered positions per thread and direction, a power of 2
+    private static final int CURSORS = 64;
+
+    /**
+     * Position reached by a thread in the row of a Node.
+     */
+    private static class Cursor {
+        int id = -1;
+        int index = -1;     // index of the last decoded neighbor
+        int value;          // id of the last decoded neighbor
+        int position;       // position of the next gap in the row
+    }
+
+    /**
+     * Growable array of bytes receiving the encoded rows.
+     */
+    private static class Encoder {
+        byte[] bytes = new byte[1024];
+        int length = 0;
+
+        void reserve(int count) {
+            if ((long) length + count > Integer.MAX_VALUE - 8) {
+                throw new RuntimeException("Graph too large!");
+            }
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(2L * bytes.length, length + count)));
+            }
+        }
+
+        void varint(int value) {
+            reserve(5);
+            while ((value & ~0x7f) != 0) {
+                bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void fixed(int position, int value) {
+            bytes[position] = (byte) (value >>> 24);
+            bytes[position + 1] = (byte) (value >>> 16);
+            bytes[position + 2] = (byte) (value >>> 8);
+            bytes[position + 3] = (byte) value;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private int _size;
+    private long _edgeCount;
+
+    // start of the row of each Node in _outRows and _inRows
+    private int[] _outOffsets;
+    private byte[] _outRows;
+    private int[] _inOffsets;
+    private byte[] _inRows;
+
+    // UTF-8 names of the Nodes, the name of Node i starting at _nameOffsets[i]
+    private int[] _nameOffsets;
+    private byte[] _names;
+    // Node ids sorted by name
+    private int[] _byName;
+
+    // out and in cursors of each thread, direct mapped by Node id
+    private final ThreadLocal<Cursor[][]> _cursors = ThreadLocal.withInitial(() -> {
+        Cursor[][] cursors = new Cursor[2][CURSORS];
+        for (int i = 0; i < CURSORS; i++) {
+            cursors[0][i] = new Cursor();
+            cursors[1][i] = new Cursor();
+        }
+        return cursors;
+    });
+
+    /**
+     * The cursors of the thread which last visited the storage, saving the ThreadLocal
+     * lookup while a single thread runs a query.
+     */
+    private static class Owner {
+        final Thread thread;
+        final Cursor[][] cursors;
+
+        Owner(Thread thread, Cursor[][] cursors) {
+            this.thread = thread;
+            this.cursors = cursors;
+        }
+    }
+    private Owner _owner = new Owner(null, null);
+
+    /**
+     * Compresses a copy of the given storage, with the same Node ids and names.
+     * @param source - the storage to compress.
+     * @throws RuntimeException if the compressed rows do not fit in a single array.
+     */
+    public CompressedStorage(GraphStorage source) {
+        _size = source.size();
+        _edgeCount = source.edgeCount();
+        _outOffsets = new int[_size + 1];
+        _inOffsets = new int[_size + 1];
+        _outRows = encode(source, true, _outOffsets);
+        _inRows = encode(source, false, _inOffsets);
+
+        Encoder names = new Encoder();
+        String[] sorted = new String[_size];
+        _nameOffsets = new int[_size + 1];
+        for (int id = 0; id < _size; id++) {
+            sorted[id] = source.getName(id);
+            byte[] bytes = sorted[id].getBytes(StandardCharsets.UTF_8);
+            names.reserve(bytes.length);
+            System.arraycopy(bytes, 0, names.bytes, names.length, bytes.length);
+            names.length += bytes.length;
+            _nameOffsets[id + 1] = names.length;
+        }
+        _names = names.toArray();
+        Integer[] byName = new Integer[_size];
+        for (int id = 0; id < _size; id++) {
+            byName[id] = id;
+        }
+        Arrays.sort(byName, (a, b) -> sorted[a].compareTo(sorted[b]));
+        _byName = new int[_size];
+        for (int i = 0; i < _size; i++) {
+            _byName[i] = byName[i];
+        }
+    }
+
+    /**
+     * Encodes the sorted rows of neighbors of all the Nodes in one direction.
+     * @param offsets - receives the start of the row of each Node.
+     * @return the encoded rows.
+     */
+    private static byte[] encode(GraphStorage source, boolean out, int[] offsets) {
+        Encoder encoder = new Encoder();
+        int[] row = new int[16];
+        for (int id = 0; id < source.size(); id++) {
+            int degree = out ? source.outDegree(id) : source.inDegree(id);
+            if (row.length < degree) {
+                row = new int[Math.max(degree, 2 * row.length)];
+            }
+            for (int i = 0; i < degree; i++) {
+                row[i] = out ? source.outNeighbor(id, i) : source.inNeighbor(id, i);
+            }
+            Arrays.sort(row, 0, degree);
+
+            offsets[id] = encoder.length;
+            encoder.varint(degree);
+            int blocks = (degree + BLOCK - 1) / BLOCK;
+            int skips = encoder.length;
+            if (blocks > 1) {
+                encoder.reserve(4 * (blocks - 1));
+                encoder.length += 4 * (blocks - 1);
+            }
+            int start = encoder.length;
+            for (int i = 0; i < degree; i++) {
+                if (i % BLOCK == 0) {
+                    if (i > 0) {
+                        encoder.fixed(skips + 4 * (i / BLOCK - 1), encoder.length - start);
+                    }
+                    int delta = row[i] - id;
+                    encoder.varint((delta << 1) ^ (delta >> 31));
+                } else {
+                    encoder.varint(row[i] - row[i - 1]);
+                }
+            }
+        }
+        offsets[source.size()] = encoder.length;
+        return encoder.toArray();
+    }
+
+    /**
+     * Gets the number of bytes used by the adjacency, in both directions.
+     * @return the size of the compressed rows and of their offsets.
+     */
+    public long memoryUsage() {
+        return _outRows.length + _inRows.length + 4L * (_outOffsets.length + _inOffsets.length);
+    }
+
+    private static int degree(byte[] rows, int position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = rows[position++];
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private int neighbor(int id, int i, boolean out) {
+        byte[] rows = out ? _outRows : _inRows;
+        Owner owner = _owner;
+        if (owner.thread != Thread.currentThread()) {
+            owner = new Owner(Thread.currentThread(), _cursors.get());
+            _owner = owner;
+        }
+        Cursor cursor = owner.cursors[out ? 0 : 1][id & (CURSORS - 1)];
+        if (cursor.id == id && cursor.index == i) {
+            return cursor.value;
+        }
+        if (cursor.id != id || cursor.index > i || i / BLOCK > (cursor.index + 1) / BLOCK) {
+            // seek to the start of the block of the neighbor, after the degree and skip pointers
+            int position = out ? _outOffsets[id] : _inOffsets[id];
+            int degree = degree(rows, position);
+            while (rows[position++] < 0) {
+                // skip the bytes of the degree
+            }
+            int blocks = (degree + BLOCK - 1) / BLOCK;
+            int start = position + (blocks > 1 ? 4 * (blocks - 1) : 0);
+            int block = i / BLOCK;
+            if (block > 0) {
+                int skip = position + 4 * (block - 1);
+                start += ((rows[skip] & 0xff) << 24) | ((rows[skip + 1] & 0xff) << 16)
+                        | ((rows[skip + 2] & 0xff) << 8) | (rows[skip + 3] & 0xff);
+            }
+            cursor.id = id;
+            cursor.index = block * BLOCK - 1;
+            cursor.value = 0;
+            cursor.position = start;
+        }
+        // decode the gaps up to the neighbor
+        int position = cursor.position;
+        int value = cursor.value;
+        for (int index = cursor.index + 1; index <= i; index++) {
+            int gap = rows[position++];
+            if (gap < 0) {
+                gap &= 0x7f;
+                for (int shift = 7; ; shift += 7) {
+                    byte b = rows[position++];
+                    gap |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+            }
+            value = (index & (BLOCK - 1)) == 0 ? id + ((gap >>> 1) ^ -(gap & 1)) : value + gap;
+        }
+        cursor.index = i;
+        cursor.value = value;
+        cursor.position = position;
+        return value;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public long edgeCount() {
+        return _edgeCount;
+    }
+
+    @Override
+    public String getName(int id) {
+        return new String(_names, _nameOffsets[id], _nameOffsets[id + 1] - _nameOffsets[id], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int indexOf(String name) {
+        int low = 0;
+        int high = _size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = getName(_byName[middle]).compareTo(name);
+            if (compare == 0) {
+                return _byName[middle];
+            } else if (compare < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int outDegree(int id) {
+        return degree(_outRows, _outOffsets[id]);
+    }
+
+    @Override
+    public int outNeighbor(int id, int i) {
+        return neighbor(id, i, true);
+    }
+
+    @Override
+    public int inDegree(int id) {
+        return degree(_inRows, _inOffsets[id]);
+    }
+
+    @Override
+    public int inNeighbor(int id, int i) {
+        return neighbor(id, i, false);
+    }
+}
@@ -0,0 +1,260 @@
+package Graphs.main;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Class definition for a GraphStorage built in bulk from a raw list of Edges, given as
+ * two primitive arrays of Node ids (Edge <i>e</i> goes from <i>sources[e]</i> to <i>targets[e]</i>). The adjacency
+ * is laid out as compressed sparse rows in both directions, using all the cores:
+ * <ul>
+ * <li>the Edges are partitioned in parallel into buckets of Nodes, one range of ids each;</li>
+ * <li>each bucket counts the degrees of its Nodes, sums them into the offsets of their
+ * rows and scatters its Edges into the rows, all the buckets in parallel;</li>
+ * <li>optionally, each row is sorted and deduplicated in parallel, then the rows are
+ * compacted in parallel.</li>
+ * </ul>
+ * This avoids adding Edges one at a time to a Graph, which is inherently serial.
+ * <br>E.g.: <pre>Graph&lt;String&gt; g = Graph.fromStorage(CsrStorage.fromEdges(n, sources, targets, true));</pre>
+ * @see GraphStorage
+ * @see Graph#fromStorage(GraphStorage)
+ */
+public class CsrStorage implements GraphStorage {
+    private int _size;
+
+    /**
+     * The name of each Node, or null for Nodes named after their ids.
+     */
+    private String[] _names;
+
+    // outgoing and incoming Edges as compressed sparse rows
+    private int[] _outOffsets;
+    private int[] _outTargets;
+    private int[] _inOffsets;
+    private int[] _inSources;
+
+    /**
+     * Map of the Node names to their ids, built the first time a Node is looked up by name.
+     * Concurrent first lookups may each build the map, none of them waiting for the others.
+     */
+    private volatile Map<String, Integer> _lookup;
+
+    private CsrStorage(int size, String[] names) {
+        _size = size;
+        _names = names;
+    }
+
+    /**
+     * Builds the storage for the given list of Edges, with the Nodes named after their ids
+     * ("0", "1", ...).
+     * @param size - the number of Nodes, all the ids being in the range [0, size - 1].
+     * @param sources - the id of the Node each Edge starts from.
+     * @param targets - the id of the Node each Edge ends at, at the same position as its source.
+     * @param sortAndDedup - true to sort the neighbors of each Node by id and drop the duplicated
+     * Edges, false to keep the Edges as given, the neighbors of each Node in no particular order.
+     * @return the new CsrStorage.
+     * @throws RuntimeException if an Edge refers to an id out of range.
+     */
+    public static CsrStorage fromEdges(int size, int[] sources, int[] targets, boolean sortAndDedup) {
+        return build(new CsrStorage(size, null), sources, targets, sortAndDedup);
+    }
+
+    /**
+     * Builds the storage for the given list of Edges and Node names.
+     * @param names - the name of each Node, indexed by the Node id, expected to be unique.
+     * @see CsrStorage#fromEdges(int, int[], int[], boolean)
+     */
+    public static CsrStorage fromEdges(String[] names, int[] sources, int[] targets, boolean sortAndDedup) {
+        return build(new CsrStorage(names.length, names.clone()), sources, targets, sortAndDedup);
+    }
+
+    private static CsrStorage build(CsrStorage storage, int[] sources, int[] targets, boolean sortAndDedup) {
+        int size = storage._size;
+        if (sources.length != targets.length) {
+            throw new RuntimeException("Edge lists of different lengths!");
+        }
+        if (IntStream.range(0, sources.length).parallel().anyMatch(e ->
+                sources[e] < 0 || sources[e] >= size || targets[e] < 0 || targets[e] >= size)) {
+            throw new RuntimeException("Node(s) not in the graph!");
+        }
+        int[][] out = compress(size, sources, targets, sortAndDedup);
+        int[][] in = compress(size, targets, sources, sortAndDedup);
+        storage._outOffsets = out[0];
+        storage._outTargets = out[1];
+        storage._inOffsets = in[0];
+        storage._inSources = in[1];
+        return storage;
+    }
+
+    /**
+     * Lays out the Edges as compressed sparse rows, grouped by their <i>keys</i> endpoint.
+     * The Node ids are split into ranges, one per bucket, and the Edges are first partitioned
+     * by the bucket of their key (counting, then scattering each chunk of Edges in parallel).
+     * Each bucket then lays out the rows of its own range of Nodes, such that no two
+     * threads ever write to the same offset or row and no atomic operation is needed.
+     * @return the offsets of the rows, followed by the rows.
+     */
+    private static int[][] compress(int size, int[] keys, int[] values, boolean sortAndDedup) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int buckets = Math.max(1, Math.min(size, parallelism == 1 ? 1 : 4 * parallelism));
+        int width = (size + buckets - 1) / buckets;
+        int[] starts = new int[buckets + 1];
+        int[] bucketKeys = keys;
+        int[] bucketValues = values;
+        if (buckets > 1) {
+            int chunks = 4 * parallelism;
+            int[][] next = new int[chunks][buckets];
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                for (int e = chunkStart(keys.length, chunks, c); e < chunkStart(keys.length, chunks, c + 1); e++) {
+                    next[c][keys[e] / width]++;
+                }
+            });
+            // turn the counts into the position of each chunk within each bucket
+            int position = 0;
+            for (int b = 0; b < buckets; b++) {
+                starts[b] = position;
+                for (int c = 0; c < chunks; c++) {
+                    int count = next[c][b];
+                    next[c][b] = position;
+                    position += count;
+                }
+            }
+            bucketKeys = new int[keys.length];
+            bucketValues = new int[keys.length];
+            int[] partitionedKeys = bucketKeys;
+            int[] partitionedValues = bucketValues;
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                for (int e = chunkStart(keys.length, chunks, c); e < chunkStart(keys.length, chunks, c + 1); e++) {
+                    int pos = next[c][keys[e] / width]++;
+                    partitionedKeys[pos] = keys[e];
+                    partitionedValues[pos] = values[e];
+                }
+            });
+        }
+        starts[buckets] = keys.length;
+
+        int[] offsets = new int[size + 1];
+        int[] rows = new int[keys.length];
+        int[] edgeKeys = bucketKeys;
+        int[] edgeValues = bucketValues;
+        IntStream.range(0, buckets).parallel().forEach(b -> {
+            int first = Math.min(size, b * width);
+            int last = Math.min(size, first + width);
+            for (int pos = starts[b]; pos < starts[b + 1]; pos++) {
+                offsets[edgeKeys[pos]]++;
+            }
+            int position = starts[b];
+            for (int id = first; id < last; id++) {
+                int degree = offsets[id];
+                offsets[id] = position;
+                position += degree;
+            }
+            int[] fill = Arrays.copyOfRange(offsets, first, last);
+            for (int pos = starts[b]; pos < starts[b + 1]; pos++) {
+                rows[fill[edgeKeys[pos] - first]++] = edgeValues[pos];
+            }
+        });
+        offsets[size] = keys.length;
+        if (!sortAndDedup) {
+            return new int[][] { offsets, rows };
+        }
+
+        // sort each row and move its distinct values to its start, then compact the rows
+        int[] distinct = new int[size + 1];
+        int[] totals = new int[buckets + 1];
+        IntStream.range(0, buckets).parallel().forEach(b -> {
+            for (int id = b * width; id < Math.min(size, (b + 1) * width); id++) {
+                Arrays.sort(rows, offsets[id], offsets[id + 1]);
+                int end = offsets[id];
+                for (int pos = offsets[id]; pos < offsets[id + 1]; pos++) {
+                    if (pos == offsets[id] || rows[pos] != rows[pos - 1]) {
+                        rows[end++] = rows[pos];
+                    }
+                }
+                distinct[id] = end - offsets[id];
+                totals[b + 1] += distinct[id];
+            }
+        });
+        Arrays.parallelPrefix(totals, Integer::sum);
+        int[] compact = new int[totals[buckets]];
+        IntStream.range(0, buckets).parallel().forEach(b -> {
+            int position = totals[b];
+            for (int id = b * width; id < Math.min(size, (b + 1) * width); id++) {
+                int count = distinct[id];
+                System.arraycopy(rows, offsets[id], compact, position, count);
+                distinct[id] = position;
+                position += count;
+            }
+        });
+        distinct[size] = compact.length;
+        return new int[][] { distinct, compact };
+    }
+
+    private static int chunkStart(int length, int chunks, int c) {
+        return (int) ((long) length * c / chunks);
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public long edgeCount() {
+        return _outTargets.length;
+    }
+
+    @Override
+    public String getName(int id) {
+        return _names == null ? Integer.toString(id) : _names[id];
+    }
+
+    @Override
+    public int indexOf(String name) {
+        if (_names == null) {
+            try {
+                int id = Integer.parseInt(name);
+                return id >= 0 && id < _size && getName(id).equals(name) ? id : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        Integer id = lookup().get(name);
+        return id == null ? -1 : id;
+    }
+
+    private Map<String, Integer> lookup() {
+        Map<String, Integer> lookup = _lookup;
+        if (lookup == null) {
+            lookup = new HashMap<String, Integer>();
+            for (int id = 0; id < _size; id++) {
+                lookup.put(getName(id), id);
+            }
+            _lookup = lookup;
+        }
+        return lookup;
+    }
+
+    @Override
+    public int outDegree(int id) {
+        return _outOffsets[id + 1] - _outOffsets[id];
+    }
+
+    @Override
+    public int outNeighbor(int id, int i) {
+        return _outTargets[_outOffsets[id] + i];
+    }
+
+    @Override
+    public int inDegree(int id) {
+        return _inOffsets[id + 1] - _inOffsets[id];
+    }
+
+    @Override
+    public int inNeighbor(int id, int i) {
+        return _inSources[_inOffsets[id] + i];
+    }
+}
@@ -0,0 +1,90 @@
+package Graphs.main;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class definition for a table of Dijkstra distances from a set of source Nodes to
+ * all the Nodes in a Graph. Each source has a row of primitive distances indexed by
+ * the id of the Node in the GraphStorage the table was computed on, with -1 standing
+ * for Nodes which cannot be reached from the source.
+ * @see Graph#dijkstraAll(java.util.Collection)
+ */
+public class DistanceTable {
+    private GraphStorage _storage;
+    private int[] _sources;
+    private int[][] _rows;
+    
+    /**
+     * Map of the id of each source Node to its row in the table.
+     */
+    private Map<Integer, Integer> _rowOf;
+    
+    DistanceTable(GraphStorage storage, int[] sources, int[][] rows) {
+        _storage = storage;
+        _sources = sources;
+        _rows = rows;
+        _rowOf = new HashMap<Integer, Integer>();
+        for (int row = 0; row < sources.length; row++) {
+            _rowOf.put(sources[row], row);
+        }
+    }
+    
+    /**
+     * Gets the number of rows (sources) in this table.
+     * @return number of sources the distances were computed from.
+     */
+    public int size() {
+        return _rows.length;
+    }
+    
+    /**
+     * Gets the name of the source Node of a row.
+     * @param row - the row in the table.
+     * @return the name of the source Node.
+     */
+    public String getSource(int row) {
+        return _storage.getName(_sources[row]);
+    }
+    
+    /**
+     * Gets the distance from the source of a row to a Node.
+     * @param row - the row in the table.
+     * @param id - the id of the Node, in the GraphStorage of the Graph.
+     * @return the distance, or -1 if the Node cannot be reached from the source.
+     */
+    public int getDistance(int row, int id) {
+        return _rows[row][id];
+    }
+    
+    /**
+     * Gets the distance between two Nodes, given by their names.
+     * @param from - the name of a source Node in this table.
+     * @param to - the name of any Node in the Graph.
+     * @return the distance, or -1 if <i>to</i> cannot be reached from <i>from</i>.
+     * @throws RuntimeException if <i>from</i> is not a source, or <i>to</i> is not in the Graph.
+     */
+    public int getDistance(String from, String to) {
+        Integer row = _rowOf.get(_storage.indexOf(from));
+        int id = _storage.indexOf(to);
+        if (row == null || id < 0) {
+            throw new RuntimeException("Node(s) not in the table!");
+        }
+        return _rows[row][id];
+    }
+    
+    /**
+     * Gets the distances of a row in the same form as Graph.dijkstra() does.
+     * @param row - the row in the table.
+     * @return map of each Node name to its distance from the source of the row.
+     * @see Graph#dijkstra(String)
+     */
+    public TreeMap<String, Integer> toMap(int row) {
+        TreeMap<String, Integer> map = new TreeMap<String, Integer>();
+        for (int id = 0; id < _rows[row].length; id++) {
+            map.put(_storage.getName(id), _rows[row][id]);
+        }
+        return map;
+    }
+}
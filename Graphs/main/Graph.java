@@ -1,11 +1,14 @@
 package Graphs.main;
 import java.security.spec.ECFieldF2m;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
@@ -13,6 +16,15 @@ import java.util.Stack;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleBiFunction;
 
 
 //import org.omg.CosNaming._BindingIteratorImplBase;
@@ -40,6 +52,61 @@ public class Graph<T extends Comparable<T>> {
      * @see java.lang.Object#hashCode()
      */
     private Map<Integer, Node<T>> _nodes;
+
+    /**
+     * Modification counter for this Graph. It is bumped by every structural
+     * change (adding or removing Nodes or Edges) and is used to tell whether
+     * results cached in <i>_cache</i> are still valid.
+     * @see Graph#getVersion()
+     */
+    private long _version;
+
+    /**
+     * Results of the structural queries (isDAGraph, isConnected, countPartitions,
+     * topoSort, ...) keyed by the name of the query, along with the value of
+     * <i>_version</i> they were computed for. The results are replaced as a whole
+     * once the Graph is modified.
+     * @see Graph#cached(String, Supplier)
+     */
+    private volatile QueryCache _cache;
+
+    /**
+     * Results of the structural queries for a single version of the Graph.
+     */
+    private static class QueryCache {
+        // stands for a null result, which the map cannot hold
+        private static final Object NULL = new Object();
+
+        private final long _version;
+        private final Map<String, Object> _results = new ConcurrentHashMap<String, Object>();
+
+        QueryCache(long version) {
+            _version = version;
+        }
+    }
+
+    /**
+     * Storage backing a read-only Graph created by fromStorage(), or null for a Graph
+     * made of Node objects on the heap. The structural queries always run against
+     * the storage given by getStorage().
+     * @see Graph#fromStorage(GraphStorage)
+     * @see Graph#getStorage()
+     */
+    private GraphStorage _storage;
+
+    /**
+     * Journal recording every modification of this Graph, or null if the Graph
+     * is not journaled.
+     * @see GraphJournal
+     */
+    private GraphJournal<T> _journal;
+
+    /**
+     * Publisher of the changes of this Graph, created by the first call to events().
+     * Volatile, such that a publisher created by another thread is seen by the writer.
+     * @see Graph#events()
+     */
+    private volatile GraphEventPublisher<T> _events;
     
     /**
      * Constructs a new Graph as an empty container fit for Nodes of the type T.
@@ -49,6 +116,132 @@ public class Graph<T extends Comparable<T>> {
     public Graph() {
         _nodes = new TreeMap<Integer, Node<T>>();
         runMe = new LinkedList<Node<T>>();
+        _version = 0;
+        _cache = new QueryCache(_version);
+    }
+
+    /**
+     * Creates a new read-only Graph backed by the given storage, for instance an
+     * OffHeapStorage holding a Graph too large for the heap. The structural queries
+     * (isConnected, isDAGraph, topoSort, dijkstra, countPartitions, getOutDegrees, ...)
+     * run against the storage as they do for any other Graph, while any attempt
+     * to modify the Graph throws.
+     * @param storage - the storage holding the Nodes and Edges of the Graph.
+     * @return a new Graph of the Node names in the storage.
+     * @see OffHeapStorage
+     */
+    public static Graph<String> fromStorage(GraphStorage storage) {
+        Graph<String> graph = new Graph<String>();
+        graph._storage = storage;
+        return graph;
+    }
+
+    /**
+     * Gets the storage the structural queries of this Graph run against. For a Graph
+     * made of Node objects this is a compact snapshot of its current structure, cached
+     * until the Graph is next modified; the snapshot does not reflect later changes.
+     * @return the GraphStorage of this Graph.
+     */
+    public GraphStorage getStorage() {
+        return _storage != null ? _storage : index();
+    }
+
+    private void checkWritable() {
+        if (_storage != null) {
+            throw new RuntimeException("Read-only graph!");
+        }
+        if (_journal != null) {
+            _journal.checkFailure();
+        }
+    }
+
+    void setJournal(GraphJournal<T> journal) {
+        _journal = journal;
+    }
+
+    /**
+     * Gets the publisher of the changes of this Graph. Subscribers receive batches of
+     * GraphEvents, one for each Node or Edge added or removed, with backpressure: a slow
+     * subscriber gets larger batches and never slows down the modifications of the Graph.
+     * <br>E.g.: <pre>g.events().subscribe(degreeTable)</pre>
+     * @return the publisher of the GraphEvents of this Graph.
+     * @see GraphEventPublisher
+     */
+    public synchronized Flow.Publisher<List<GraphEvent<T>>> events() {
+        if (_events == null) {
+            _events = new GraphEventPublisher<T>();
+        }
+        return _events;
+    }
+
+    /**
+     * Records a change of the Graph in its journal, if any, and publishes it
+     * to the subscribers of events(), if any.
+     */
+    private void changed(GraphEvent.Type type, T data, T to) {
+        if (_journal != null) {
+            _journal.append(type, data, to);
+        }
+        publish(type, data, to);
+    }
+
+    private boolean publishing() {
+        GraphEventPublisher<T> events = _events;
+        return events != null && events.hasSubscribers();
+    }
+
+    private void publish(GraphEvent.Type type, T data, T to) {
+        if (publishing()) {
+            _events.publish(new GraphEvent<T>(type, data, to, _version));
+        }
+    }
+
+    /**
+     * Gets the modification count of this Graph. The value changes each time
+     * a Node or an Edge is added to or removed from the Graph, so two equal
+     * values guarantee the structure of the Graph did not change in between.
+     * @return the current version of this Graph.
+     */
+    public long getVersion() {
+        return _version;
+    }
+
+    /**
+     * Marks the structure of the Graph as modified, invalidating all the
+     * cached query results.
+     */
+    private void modified() {
+        _version++;
+    }
+
+    /**
+     * Gets the result of a structural query from the cache, computing it if the
+     * Graph was modified since it was last stored. Cached results are shared between
+     * callers, so the returned objects are not meant to be modified. The cache can be
+     * used by concurrent readers (e.g. a GraphServer), as long as the Graph is not
+     * modified at the same time. The result is computed without holding any lock, such
+     * that a slow query never blocks the others: concurrent callers missing the cache
+     * may compute the same result, and they all get the first one stored.
+     * @param query - name of the query, used as the cache key.
+     * @param compute - computes the result when it is not cached.
+     * @return the result of the query for the current version of the Graph.
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R cached(String query, Supplier<R> compute) {
+        QueryCache cache = _cache;
+        if (cache._version != _version) {
+            cache = new QueryCache(_version);
+            _cache = cache;
+        }
+        Object result = cache._results.get(query);
+        if (result == null) {
+            R computed = compute.get();
+            result = cache._results.putIfAbsent(query, computed == null ? QueryCache.NULL : computed);
+            if (result == null) {
+                return computed;
+            }
+        }
+        return result == QueryCache.NULL ? null : (R) result;
     }
     
     /**
@@ -57,7 +250,7 @@ public class Graph<T extends Comparable<T>> {
      * @return number of Nodes in this Graph.
      */
     public int size() {
-        return _nodes.size();
+        return _storage != null ? _storage.size() : _nodes.size();
     }
     
     /**
@@ -87,12 +280,15 @@ public class Graph<T extends Comparable<T>> {
      * @see java.lang.Object#hashCode()
      */
     public void addNode(T data) {
+        checkWritable();
         int nodeHash = data.hashCode();
         if (_nodes.containsKey(nodeHash)) {
             throw new RuntimeException("Ambiguous graph!");
         }
         
         _nodes.put(nodeHash, new Node<T>(data));
+        modified();
+        changed(GraphEvent.Type.NODE_ADDED, data, null);
     }
     
     /**
@@ -106,13 +302,22 @@ public class Graph<T extends Comparable<T>> {
      * @see Graph#removeEdge(Comparable, Comparable)
      */
     public void addEdge(T from, T to) {
+        checkWritable();
         Node<T> fromNode = _nodes.get(from.hashCode());
         Node<T> toNode = _nodes.get(to.hashCode());
         if (fromNode == null || toNode == null) {
             throw new RuntimeException("Node(s) not in the graph!");
         }
         
+        boolean added = publishing() && !fromNode.hasEdge(toNode);
         fromNode.addEdge(toNode);
+        modified();
+        if (_journal != null) {
+            _journal.append(GraphEvent.Type.EDGE_ADDED, from, to);
+        }
+        if (added) {
+            publish(GraphEvent.Type.EDGE_ADDED, from, to);
+        }
     }
     
     /**
@@ -129,12 +334,21 @@ public class Graph<T extends Comparable<T>> {
     public void removeEdge(T from, T to) {
         // TODO: Implement this method according to
         // TODO: the specification in javadocs
+        checkWritable();
         Node<T> fromNode = _nodes.get(from.hashCode());
         Node<T> toNode = _nodes.get(to.hashCode());
         if(fromNode == null || toNode == null){
             throw new IllegalArgumentException();
         }
+        boolean removed = publishing() && fromNode.hasEdge(toNode);
         fromNode.removeEdge(toNode); 
+        modified();
+        if (_journal != null) {
+            _journal.append(GraphEvent.Type.EDGE_REMOVED, from, to);
+        }
+        if (removed) {
+            publish(GraphEvent.Type.EDGE_REMOVED, from, to);
+        }
     }
     
     /**
@@ -147,18 +361,32 @@ public class Graph<T extends Comparable<T>> {
     public void removeNode(T data) {
         // TODO: Implement this method according to
         // TODO: the specification in javadocs
+        checkWritable();
         Node<T> removeMe = _nodes.get(data.hashCode());
         if(removeMe == null){
             throw new RuntimeException("L BOZO");
         }
+        List<GraphEvent<T>> removed = new ArrayList<GraphEvent<T>>();
+        if (publishing()) {
+            for (Node<T> other : removeMe.getEdges()) {
+                removed.add(new GraphEvent<T>(GraphEvent.Type.EDGE_REMOVED, data, other.getData(), _version + 1));
+            }
+        }
         for(Map.Entry<Integer, Node<T>> m: _nodes.entrySet()){
             if(m.getValue().hasEdge(removeMe)){
                 m.getValue().removeEdge(removeMe);
+                if (publishing() && m.getValue() != removeMe) {
+                    removed.add(new GraphEvent<T>(GraphEvent.Type.EDGE_REMOVED, m.getValue().getData(), data, _version + 1));
+                }
             }
         }
         removeMe.removeAllEdges();
         _nodes.remove(data.hashCode());
-        
+        modified();
+        for (GraphEvent<T> event : removed) {
+            _events.publish(event);
+        }
+        changed(GraphEvent.Type.NODE_REMOVED, data, null);
     }
 
 
@@ -177,33 +405,17 @@ public class Graph<T extends Comparable<T>> {
      * @return true if the Graph is connected, false otherwise.
      */
     public boolean isConnected() {
-        // TODO: Implement this method according to
-        // TODO: the specification in javadocs
-        boolean answer = true;
-        for(Node<T> n: _nodes.values()){
-            for(Node<T> nu: _nodes.values()){
-                nu.reset();
-            }
-
-            n.isConnected();
+        return cached("isConnected", this::checkConnected);
+    }
 
-            for(Node<T> node: _nodes.values()){
-                if(node.getState() != 1){
-                    answer = false;
-                } 
+    private boolean checkConnected() {
+        // every Node can reach every other Node iff they all share one strongly connected component
+        for (int component : components()) {
+            if (component != 0) {
+                return false;
             }
-        
-
-
         }
-        return answer;
-           
-
-
-        
-        
-
-        
+        return true;
     }
 
 
@@ -212,15 +424,23 @@ public class Graph<T extends Comparable<T>> {
      * @return true if Graph is Directed Acyclic, false otherwise.
      */
     public boolean isDAGraph() {
-        boolean answer = false;
+        return cached("isDAGraph", this::checkDAGraph);
+    }
 
-        for(Node<T> n: _nodes.values()){
-            answer = n.loops(new HashSet<Integer>());
-            if(answer){
-                return !answer;
+    private boolean checkDAGraph() {
+        // a cycle is either a self-loop or a strongly connected component of several Nodes
+        GraphStorage storage = getStorage();
+        if (componentCount() != storage.size()) {
+            return false;
+        }
+        for (int id = 0; id < storage.size(); id++) {
+            for (int i = 0; i < storage.outDegree(id); i++) {
+                if (storage.outNeighbor(id, i) == id) {
+                    return false;
+                }
             }
         }
-        return !answer;
+        return true;
     }
 
     /**
@@ -259,6 +479,9 @@ public class Graph<T extends Comparable<T>> {
      */
     @Override
     public String toString() {
+        if (_storage != null) {
+            return storageToString();
+        }
         String output = "";
         boolean first = true;
         for(Node<?> n : _nodes.values()) {
@@ -272,101 +495,529 @@ public class Graph<T extends Comparable<T>> {
         return output;
     }
 
-    public TreeMap<Integer, TreeSet<String>> getOutDegrees() {
-        TreeMap<Integer, TreeSet<String>> map = new TreeMap<Integer, TreeSet<String>>();
-        Queue<Node<T>> q = new LinkedList<Node<T>>();
-        q.addAll(_nodes.values());
-        while(!q.isEmpty()){
-            if(map.get(q.peek().getEdges().size()) == null){
-                TreeSet<String> s = new TreeSet<String>();
-                s.add(q.peek().getName());
-                map.put(q.remove().getEdges().size(), s);
-            } else map.get(q.peek().getEdges().size()).add(q.remove().getName());
+    /**
+     * Gives the String representation of a Graph backed by a read-only storage,
+     * in the same format as toString(), listing the Nodes in the order of their ids.
+     */
+    private String storageToString() {
+        StringBuilder output = new StringBuilder();
+        for (int id = 0; id < _storage.size(); id++) {
+            if (id > 0) {
+                output.append("\n");
+            }
+            output.append(_storage.getName(id)).append(" > ");
+            for (int i = 0; i < _storage.outDegree(id); i++) {
+                if (i > 0) {
+                    output.append(" ");
+                }
+                output.append(_storage.getName(_storage.outNeighbor(id, i)));
+            }
         }
-        return map;
+        return output.toString();
+    }
+
+    /**
+     * Groups the Nodes of this Graph by their out-degree.
+     * @return map of each out-degree to the names of the Nodes having it.
+     * @see Graph#outDegreeLevels()
+     */
+    public TreeMap<Integer, TreeSet<String>> getOutDegrees() {
+        return outDegreeLevels().toTreeMap();
     }
 
+    /**
+     * Groups the Nodes of this Graph by their in-degree.
+     * @return map of each in-degree to the names of the Nodes having it.
+     * @see Graph#inDegreeLevels()
+     */
     public TreeMap<Integer, TreeSet<String>> getInDegrees() {
-        TreeMap<Integer, TreeSet<String>> map = new TreeMap<Integer, TreeSet<String>>();
-        Queue<Node<T>> q = new LinkedList<Node<T>>();
-        HashSet<Node<T>> s = new HashSet<Node<T>>();
-        s.addAll(_nodes.values());
-        q.addAll(_nodes.values());
-        while(!q.isEmpty()){
-            Node<T> current = q.remove();
-            int i = 0;
-            for(Node<T> n : s){
-                if(n.getEdges().containsValue(current)){
-                    i = i + 1;
-                }
-            }
-            if(map.get(i) == null){
-                TreeSet<String> set = new TreeSet<String>();
-                set.add(current.getName());
-                map.put(i, set);
-            } else map.get(i).add(current.getName());
+        return inDegreeLevels().toTreeMap();
+    }
+
+    /**
+     * Gets the out-degree of each Node as a primitive-backed NodeLevels, without
+     * creating any String or sorted collection.
+     * @return the out-degrees, indexed by the Node id in getStorage().
+     * @see Graph#getOutDegrees()
+     */
+    public NodeLevels outDegreeLevels() {
+        GraphStorage storage = getStorage();
+        int[] degrees = new int[storage.size()];
+        for (int id = 0; id < storage.size(); id++) {
+            degrees[id] = storage.outDegree(id);
         }
-            
-        return map;
+        return new NodeLevels(storage, degrees);
     }
 
+    /**
+     * Gets the in-degree of each Node as a primitive-backed NodeLevels, without
+     * creating any String or sorted collection.
+     * @return the in-degrees, indexed by the Node id in getStorage().
+     * @see Graph#getInDegrees()
+     */
+    public NodeLevels inDegreeLevels() {
+        GraphStorage storage = getStorage();
+        int[] degrees = new int[storage.size()];
+        for (int id = 0; id < storage.size(); id++) {
+            degrees[id] = storage.inDegree(id);
+        }
+        return new NodeLevels(storage, degrees);
+    }
+
+    /**
+     * Sorts the Nodes of this DAG topologically, grouping them by their position in the sort.
+     * The result is cached until the Graph is next modified and is not meant to be modified.
+     * @return map of each position in the sort to the names of the Nodes at that position,
+     * or null if the Graph is not a DAG.
+     * @see Graph#topoSortLevels()
+     */
     public TreeMap<Integer, TreeSet<String>> topoSort() {
-        TreeMap<Integer, TreeSet<String>> map = new TreeMap<Integer, TreeSet<String>>();
+        return cached("topoSort", () -> {
+            NodeLevels levels = topoSortLevels();
+            return levels == null ? null : levels.toTreeMap();
+        });
+    }
+
+    /**
+     * Sorts the Nodes of this DAG topologically, as a primitive-backed NodeLevels giving
+     * the position of each Node in the sort. The position of a Node is the length of the
+     * longest path leading to it. The result is cached until the Graph is next modified.
+     * @return the position of each Node, indexed by the Node id in getStorage(),
+     * or null if the Graph is not a DAG.
+     * @see Graph#topoSort()
+     */
+    public NodeLevels topoSortLevels() {
+        return cached("topoSortLevels", this::computeTopoSort);
+    }
+
+    private NodeLevels computeTopoSort() {
         if(!isDAGraph()){
             return null;
         }
-        Queue<Node<T>> q = new LinkedList<Node<T>>();
-        q.addAll(_nodes.values());
-        
-        while(!q.isEmpty()){
-            if(map.get(q.peek().getState()) == null){
+        // the position of a Node is the length of the longest path leading to it
+        GraphStorage storage = getStorage();
+        int[] pending = new int[storage.size()];
+        int[] position = new int[storage.size()];
+        int[] queue = new int[storage.size()];
+        int head = 0;
+        int tail = 0;
+        for (int id = 0; id < storage.size(); id++) {
+            pending[id] = storage.inDegree(id);
+            if (pending[id] == 0) {
+                queue[tail++] = id;
+            }
+        }
+        while (head < tail) {
+            int u = queue[head++];
+            for (int i = 0; i < storage.outDegree(u); i++) {
+                int v = storage.outNeighbor(u, i);
+                position[v] = Math.max(position[v], position[u] + 1);
+                if (--pending[v] == 0) {
+                    queue[tail++] = v;
+                }
             }
-            q.addAll(q.remove().topoSort());
         }
 
-        for(Node<T> node: _nodes.values()){
-            if(map.get(node.getState()) == null){
-                TreeSet<String> s = new TreeSet<String>();
-                s.add(node.getName());
-                map.put((Integer) node.getState(), s);
+        return new NodeLevels(storage, position);
+    }
+
+    /**
+     * Counts the (weakly connected) partitions of this Graph. The result is cached
+     * until the Graph is next modified.
+     * @return the number of partitions in the Graph.
+     */
+    public Object countPartitions() {
+        return cached("countPartitions", this::computePartitions);
+    }
+
+    private Object computePartitions() {
+        int count = 0;
+        for (int partition : partitions()) {
+            count = Math.max(count, partition + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the partition (weakly connected component) of each Node, indexed by the Node
+     * id in the GraphStorage, cached until the Graph is next modified. The partitions are
+     * found by flooding the Graph across its Edges in both directions.
+     */
+    int[] partitions() {
+        return cached("partitions", () -> {
+            GraphStorage storage = getStorage();
+            int[] partition = new int[storage.size()];
+            int[] queue = new int[storage.size()];
+            Arrays.fill(partition, -1);
+            int count = 0;
+            for (int root = 0; root < storage.size(); root++) {
+                if (partition[root] >= 0) {
+                    continue;
+                }
+                int head = 0;
+                int tail = 0;
+                partition[root] = count;
+                queue[tail++] = root;
+                while (head < tail) {
+                    int u = queue[head++];
+                    for (int i = 0; i < storage.outDegree(u); i++) {
+                        int v = storage.outNeighbor(u, i);
+                        if (partition[v] < 0) {
+                            partition[v] = count;
+                            queue[tail++] = v;
+                        }
+                    }
+                    for (int i = 0; i < storage.inDegree(u); i++) {
+                        int v = storage.inNeighbor(u, i);
+                        if (partition[v] < 0) {
+                            partition[v] = count;
+                            queue[tail++] = v;
+                        }
+                    }
+                }
+                count++;
             }
-            map.get(node.getState()).add(node.getName());
+            return partition;
+        });
+    }
+
+    /**
+     * Splits this Graph into shards, one per partition, such that the structural queries
+     * can run on all the partitions in parallel and each partition can be exported on its
+     * own. The shards are built once and cached until the Graph is next modified.
+     * @return the ShardedGraph for the current version of the Graph.
+     * @see Graph#countPartitions()
+     */
+    public ShardedGraph shard() {
+        return cached("shard", () -> new ShardedGraph(getStorage(), partitions(), (Integer) countPartitions()));
+    }
+
+    /**
+     * Creates a read-only view of the Nodes and Edges of this Graph accepted by the given
+     * predicates, on which all the structural queries can run. Nothing is copied: the
+     * view filters the current getStorage() as it is visited, and does not reflect
+     * later changes of this Graph. The predicates get the data of the Nodes in that
+     * same snapshot, whenever the view is visited.
+     * <br>E.g.: <pre>g.subgraph(null, (from, to) -&gt; isActiveToday(from, to)).isConnected()</pre>
+     * @param nodes - accepts the data of the Nodes in the view, or null to keep all the Nodes.
+     * @param edges - accepts the Edges in the view given the data of their Nodes, or null
+     * to keep all the Edges between kept Nodes.
+     * @return a new Graph of the names of the Nodes in the view.
+     * @see SubgraphView
+     */
+    public Graph<String> subgraph(Predicate<T> nodes, BiPredicate<T, T> edges) {
+        GraphStorage storage = getStorage();
+        IntFunction<T> data = dataOf(storage);
+        return fromStorage(new SubgraphView(storage,
+                nodes == null ? null : id -> nodes.test(data.apply(id)),
+                edges == null ? null : (from, to) -> edges.test(data.apply(from), data.apply(to))));
+    }
+
+    /**
+     * Creates a read-only copy of this Graph with its Nodes renumbered in the given order,
+     * such that the traversals run by the structural queries get a better memory locality
+     * than with the hashCode() order of the Nodes. The mapping between the new ids and the
+     * ids in getStorage() is kept by the ReorderedStorage of the copy.
+     * <br>E.g.: <pre>g.reorder(ReorderedStorage.Order.RCM).dijkstra("A")</pre>
+     * @param order - the ordering of the Nodes.
+     * @return a new Graph of the Node names, backed by a ReorderedStorage.
+     * @see ReorderedStorage
+     */
+    public Graph<String> reorder(ReorderedStorage.Order order) {
+        return fromStorage(new ReorderedStorage(getStorage(), order));
+    }
+
+    /**
+     * Creates a read-only copy of this Graph with its adjacency compressed (sorted
+     * neighbors stored as varint encoded gaps), using a fraction of the memory of
+     * getStorage() while supporting all the structural queries.
+     * @return a new Graph of the Node names, backed by a CompressedStorage.
+     * @see CompressedStorage
+     */
+    public Graph<String> compress() {
+        return fromStorage(new CompressedStorage(getStorage()));
+    }
+
+    /**
+     * Computes the Dijkstra distances (number of Edges on the shortest path) from
+     * a source Node to all the Nodes in this Graph.
+     * @param string - the name of the source Node.
+     * @return map of each Node name to its distance from the source, or -1 if the
+     * Node cannot be reached from the source.
+     * @throws RuntimeException if the source Node is not present in the Graph.
+     */
+    public TreeMap<String, Integer> dijkstra(String string) {
+        GraphStorage storage = getStorage();
+        int source = storage.indexOf(string);
+        if (source < 0) {
+            throw new RuntimeException("Node(s) not in the graph!");
+        }
+        int[] distance = distances(storage, source);
+
+        TreeMap<String, Integer> map = new TreeMap<String, Integer>();
+        for (int id = 0; id < storage.size(); id++) {
+            map.put(storage.getName(id), distance[id]);
         }
-        System.out.println(map);
         return map;
     }
 
-    public Object countPartitions() {
-        HashSet<Node<T>> s = new HashSet<Node<T>>();
-        s.addAll(_nodes.values());
-        int i = 1;
-        if(s.size() == 0){
-            return 0;
-        }
-        for(Node<T> node: s){
-            int temp = node.setPartition(i);
-            if(temp > 0){
-                System.out.println(temp);
-                node.setPartition(node.setPartition(temp));
+    /**
+     * Computes the Dijkstra distances from a source Node to all the Nodes in a storage,
+     * by a breadth-first traversal of the outgoing (egress) Edges.
+     * @param storage - the storage of the Graph.
+     * @param source - the id of the source Node.
+     * @return the distance of each Node from the source, indexed by the Node id,
+     * or -1 for the Nodes which cannot be reached from the source.
+     */
+    static int[] distances(GraphStorage storage, int source) {
+        int[] distance = new int[storage.size()];
+        Arrays.fill(distance, -1);
+        traverse(storage, source, distance, new int[storage.size()]);
+        return distance;
+    }
+
+    /**
+     * Breadth-first traversal computing the distances from a source Node into
+     * caller provided arrays, such that they can be reused across traversals.
+     * @param storage - the storage of the Graph.
+     * @param source - the id of the source Node.
+     * @param distance - array of storage.size() entries, all expected to be -1.
+     * @param queue - array of storage.size() entries, used as the traversal queue.
+     * @return the number of Nodes reached; their ids are the first entries in <i>queue</i>,
+     * and these are the only entries set in <i>distance</i>.
+     */
+    static int traverse(GraphStorage storage, int source, int[] distance, int[] queue) {
+        int head = 0;
+        int tail = 0;
+        distance[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int i = 0; i < storage.outDegree(u); i++) {
+                int v = storage.outNeighbor(u, i);
+                if (distance[v] < 0) {
+                    distance[v] = distance[u] + 1;
+                    queue[tail++] = v;
+                }
             }
+        }
+        return tail;
+    }
 
-            i = node.getState() + 1;
+    /**
+     * Computes the Dijkstra distances from each of the given sources to all the Nodes in
+     * this Graph. The sources are spread across the cores by a fork-join pool, and the
+     * results are stored in a compact table of primitive distances, one row per source.
+     * <br>E.g.: <pre>g.dijkstraAll(depots).getDistance("X", "A")</pre>
+     * @param sources - the data of the source Nodes.
+     * @return the DistanceTable, with one row for each source, in the order of <i>sources</i>.
+     * @throws RuntimeException if any of the sources is not present in the Graph.
+     * @see Graph#dijkstra(String)
+     */
+    public DistanceTable dijkstraAll(Collection<T> sources) {
+        GraphStorage storage = getStorage();
+        int[] ids = sourceIds(sources);
+        int[][] rows = new int[ids.length][];
+        ForkJoinPool.commonPool().invoke(new BatchDistances(storage, ids, (row, distance) -> {
+            rows[row] = distance.clone();
+        }));
+        return new DistanceTable(storage, ids, rows);
+    }
+
+    /**
+     * Computes the Dijkstra distances from each of the given sources to all the Nodes in
+     * this Graph, streaming the results to a consumer instead of storing them. The sources
+     * are spread across the cores by a fork-join pool and the consumer is called from
+     * multiple threads at once, each call receiving the source and an array of the
+     * distances indexed by the Node id in getStorage() (-1 for unreachable Nodes).
+     * The array is reused after the call returns, so it must be copied to be kept.
+     * @param sources - the data of the source Nodes.
+     * @param consumer - thread-safe consumer of the distances from each source.
+     * @throws RuntimeException if any of the sources is not present in the Graph.
+     */
+    public void dijkstraAll(Collection<T> sources, BiConsumer<T, int[]> consumer) {
+        GraphStorage storage = getStorage();
+        int[] ids = sourceIds(sources);
+        ForkJoinPool.commonPool().invoke(new BatchDistances(storage, ids, (row, distance) -> {
+            consumer.accept(dataOf(ids[row]), distance);
+        }));
+    }
+
+    private int[] sourceIds(Collection<T> sources) {
+        int[] ids = new int[sources.size()];
+        int row = 0;
+        for (T source : sources) {
+            ids[row] = idOf(source);
+            if (ids[row++] < 0) {
+                throw new RuntimeException("Node(s) not in the graph!");
+            }
         }
-        HashSet<Integer> set = new HashSet<Integer>();
-        for(Node<T> node: s){
-            set.add(node.getState());
+        return ids;
+    }
+
+    /**
+     * Finds a shortest path (fewest Edges) from the Node containing <i>from</i> to the Node
+     * containing <i>to</i>. The search runs from both ends at once and stops as soon as
+     * the two frontiers meet on a path which cannot be improved, such that only a
+     * fraction of the Graph is explored.
+     * @param from - Node where the path starts.
+     * @param to - Node where the path ends.
+     * @return the shortest Path, or null if <i>to</i> cannot be reached from <i>from</i>.
+     * @throws RuntimeException if either of the two Nodes are not present in the Graph.
+     * @see Graph#shortestPath(Comparable, Comparable, ToDoubleBiFunction)
+     */
+    public Path<T> shortestPath(T from, T to) {
+        return shortestPath(from, to, null);
+    }
+
+    /**
+     * Finds a shortest path (fewest Edges) from the Node containing <i>from</i> to the Node
+     * containing <i>to</i>, guiding the search with an A* heuristic. The heuristic estimates
+     * the number of Edges between two Nodes (e.g. a scaled straight-line distance) and must
+     * never overestimate it, nor decrease by more than 1 across an Edge; otherwise the
+     * returned Path may not be the shortest.
+     * @param from - Node where the path starts.
+     * @param to - Node where the path ends.
+     * @param heuristic - estimate of the distance between two Nodes, or null for none.
+     * @return the shortest Path, or null if <i>to</i> cannot be reached from <i>from</i>.
+     * @throws RuntimeException if either of the two Nodes are not present in the Graph.
+     */
+    public Path<T> shortestPath(T from, T to, ToDoubleBiFunction<T, T> heuristic) {
+        int source = idOf(from);
+        int target = idOf(to);
+        if (source < 0 || target < 0) {
+            throw new RuntimeException("Node(s) not in the graph!");
         }
-        return set.size();
+        
+        return new PathSearch<T>(getStorage(), this::dataOf, heuristic).find(source, target);
     }
 
-    public TreeMap<String, Integer> dijkstra(String string) {
-        TreeMap<String, Integer> map = new TreeMap<String, Integer>();
+    /**
+     * Finds the strongly connected components of this Graph. Within a component each
+     * Node can be reached from every other Node, such that each cycle in the Graph is
+     * contained in a single component. The components are numbered from 0 in topological
+     * order: an Edge from a Node in component <i>a</i> to a Node in a different component
+     * <i>b</i> implies a &lt; b.
+     * <br>The result is cached until the Graph is next modified and is not meant to be modified.
+     * @return map of each Node name to the number of its component.
+     * @see Graph#condensation()
+     */
+    public TreeMap<String, Integer> stronglyConnectedComponents() {
+        return cached("stronglyConnectedComponents", () -> {
+            GraphStorage storage = getStorage();
+            int[] components = components();
+            TreeMap<String, Integer> map = new TreeMap<String, Integer>();
+            for (int id = 0; id < storage.size(); id++) {
+                map.put(storage.getName(id), components[id]);
+            }
+            return map;
+        });
+    }
 
-        _nodes.get(string.hashCode()).setDistances(0);
-        for(Node<T> n: _nodes.values()){
-            map.put(n.getName(), n.getDistance(_nodes.get(string.hashCode())));
+    /**
+     * Builds the condensation of this Graph: a new Graph with a Node for each of the
+     * strongly connected components of this Graph, and an Edge between two components
+     * whenever an Edge links any of their Nodes. The condensation is always a DAG.
+     * @return a new Graph whose Nodes are the component numbers.
+     * @see Graph#stronglyConnectedComponents()
+     */
+    public Graph<Integer> condensation() {
+        GraphStorage storage = getStorage();
+        int[] components = components();
+        Graph<Integer> graph = new Graph<Integer>();
+        for (int c = 0; c < componentCount(); c++) {
+            graph.addNode(c);
         }
-        return map;
+        for (int id = 0; id < storage.size(); id++) {
+            for (int i = 0; i < storage.outDegree(id); i++) {
+                int other = components[storage.outNeighbor(id, i)];
+                if (other != components[id]) {
+                    graph.addEdge(components[id], other);
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Sorts the Nodes of this Graph topologically after collapsing each cycle into a
+     * single position, such that it can run on Graphs which are not DAGs. All the Nodes
+     * in a strongly connected component share the position of that component in the
+     * topological sort of the condensation.
+     * @return map of each position in the sort to the names of the Nodes at that position.
+     * @see Graph#topoSort()
+     * @see Graph#condensation()
+     */
+    public TreeMap<Integer, TreeSet<String>> topoSortComponents() {
+        return cached("topoSortComponents", () -> {
+            TreeMap<Integer, Integer> positions = new TreeMap<Integer, Integer>();
+            for (Map.Entry<Integer, TreeSet<String>> e : condensation().topoSort().entrySet()) {
+                for (String component : e.getValue()) {
+                    positions.put(Integer.parseInt(component), e.getKey());
+                }
+            }
+            TreeMap<Integer, TreeSet<String>> map = new TreeMap<Integer, TreeSet<String>>();
+            for (Map.Entry<String, Integer> e : stronglyConnectedComponents().entrySet()) {
+                int position = positions.get(e.getValue());
+                if (map.get(position) == null) {
+                    map.put(position, new TreeSet<String>());
+                }
+                map.get(position).add(e.getKey());
+            }
+            return map;
+        });
+    }
+
+    /**
+     * Gets the strongly connected component of each Node, indexed by the Node id
+     * in the GraphStorage, cached until the Graph is next modified.
+     */
+    int[] components() {
+        return cached("components", () -> StrongComponents.find(getStorage()));
+    }
+
+    int componentCount() {
+        int count = 0;
+        for (int component : components()) {
+            count = Math.max(count, component + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the compact, id based snapshot of the structure of this Graph.
+     * The snapshot is built once and cached until the Graph is next modified.
+     * @return the GraphIndex for the current version of the Graph.
+     */
+    GraphIndex<T> index() {
+        return cached("index", () -> new GraphIndex<T>(_nodes.values()));
+    }
+
+    /**
+     * Gets the id, in the GraphStorage, of the Node containing the given data.
+     * @return the id of the Node, or -1 if there is no such Node in the Graph.
+     */
+    int idOf(T data) {
+        return _storage != null ? _storage.indexOf(data.toString()) : index().idOf(data);
+    }
+
+    /**
+     * Gets the data of the Node with the given id in the GraphStorage. The data of a
+     * Graph created by fromStorage() are the Node names, matching its String type.
+     */
+    @SuppressWarnings("unchecked")
+    T dataOf(int id) {
+        return _storage != null ? (T) _storage.getName(id) : index().getData(id);
+    }
+
+    /**
+     * Gets the data of the Nodes of a given getStorage() snapshot by their id, such that
+     * the ids keep resolving to the same data once the Graph is modified.
+     * @param storage - the storage returned by getStorage().
+     */
+    @SuppressWarnings("unchecked")
+    private IntFunction<T> dataOf(GraphStorage storage) {
+        return _storage != null ? id -> (T) storage.getName(id) : ((GraphIndex<T>) storage)::getData;
     }
 
     
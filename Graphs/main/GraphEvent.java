@@ -0,0 +1,80 @@
+package Graphs.main;
+
+/**
+ * Class definition for a change in the structure of a Graph, as published to the
+ * subscribers of Graph.events(). Removing a Node publishes the removal of each of its
+ * Edges before the removal of the Node itself, and adding an Edge already in the Graph
+ * or removing an Edge not in the Graph publishes nothing, such that subscribers can
+ * maintain their views (degrees, partitions, copies, ...) incrementally.
+ * @param <T> - reference type of the Nodes in the Graph.
+ * @see Graph#events()
+ */
+public class GraphEvent<T extends Comparable<T>> {
+    
+    /**
+     * The kinds of changes.
+     */
+    public enum Type {
+        NODE_ADDED,
+        EDGE_ADDED,
+        EDGE_REMOVED,
+        NODE_REMOVED
+    }
+    
+    private Type _type;
+    private T _data;
+    private T _to;
+    private long _version;
+    
+    /**
+     * Constructs a new event.
+     * @param type - the kind of change.
+     * @param data - the data of the Node, or of the Node the Edge starts from.
+     * @param to - the data of the Node the Edge ends at, or null for Node events.
+     * @param version - the version of the Graph right after the change.
+     */
+    public GraphEvent(Type type, T data, T to, long version) {
+        _type = type;
+        _data = data;
+        _to = to;
+        _version = version;
+    }
+    
+    /**
+     * Gets the kind of change.
+     * @return the type of the event.
+     */
+    public Type getType() {
+        return _type;
+    }
+    
+    /**
+     * Gets the data of the Node added or removed, or of the Node the Edge starts from.
+     * @return the data of the Node.
+     */
+    public T getData() {
+        return _data;
+    }
+    
+    /**
+     * Gets the data of the Node the Edge ends at.
+     * @return the data of the Node, or null for Node events.
+     */
+    public T getTo() {
+        return _to;
+    }
+    
+    /**
+     * Gets the version of the Graph right after the change.
+     * @return the value of Graph.getVersion() after the change.
+     * @see Graph#getVersion()
+     */
+    public long getVersion() {
+        return _version;
+    }
+    
+    @Override
+    public String toString() {
+        return _type + " " + _data + (_to != null ? " > " + _to : "");
+    }
+}
@@ -0,0 +1,205 @@
+package Graphs.main;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+
+/**
+ * Class publishing the changes of a Graph to any number of subscribers, as batches of
+ * GraphEvents delivered asynchronously with backpressure.
+ * <p>
+ * Each subscription buffers the events published since its last delivery. Whenever the
+ * subscriber has requested more items, all the buffered events (up to a maximum batch size)
+ * are delivered as one List, on the executor of the publisher, such that a subscriber
+ * falling behind receives fewer and larger batches. Publishing never waits for subscribers:
+ * a subscriber whose buffer overflows its capacity is cancelled and receives onError,
+ * after which it is expected to rebuild its view from the Graph and subscribe again.
+ * <br>E.g.:<pre>
+ * g.events().subscribe(new Flow.Subscriber&lt;List&lt;GraphEvent&lt;String&gt;&gt;&gt;() { ... });</pre>
+ * @param <T> - reference type of the Nodes in the Graph.
+ * @see Graph#events()
+ * @see GraphEvent
+ */
+public class GraphEventPublisher<T extends Comparable<T>> implements Flow.Publisher<List<GraphEvent<T>>> {
+    /**
+     * Default number of events a subscription can buffer.
+     */
+    public static final int CAPACITY = 1 << 16;
+
+    /**
+     * Default maximum number of events delivered in a single batch.
+     */
+    public static final int MAX_BATCH = 1024;
+
+    private Executor _executor;
+    private int _capacity;
+    private int _maxBatch;
+    private List<Subscription> _subscriptions;
+
+    /**
+     * Constructs a publisher delivering on the common fork-join pool, with the default
+     * capacity and batch size.
+     */
+    public GraphEventPublisher() {
+        this(ForkJoinPool.commonPool(), CAPACITY, MAX_BATCH);
+    }
+
+    /**
+     * Constructs a publisher.
+     * @param executor - the executor delivering the batches to the subscribers.
+     * @param capacity - the number of events each subscription can buffer.
+     * @param maxBatch - the maximum number of events in a batch.
+     */
+    public GraphEventPublisher(Executor executor, int capacity, int maxBatch) {
+        _executor = executor;
+        _capacity = capacity;
+        _maxBatch = maxBatch;
+        _subscriptions = new CopyOnWriteArrayList<Subscription>();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<GraphEvent<T>>> subscriber) {
+        Subscription subscription = new Subscription(subscriber);
+        _subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Checks if any subscriber is listening, such that the Graph can skip building
+     * events nobody receives.
+     * @return true if there is at least one subscription.
+     */
+    public boolean hasSubscribers() {
+        return !_subscriptions.isEmpty();
+    }
+
+    /**
+     * Publishes an event to all the current subscribers, without waiting for any of them.
+     * @param event - the change of the Graph.
+     */
+    public void publish(GraphEvent<T> event) {
+        for (Subscription subscription : _subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Subscription of a single subscriber, buffering its events until they are requested.
+     */
+    private class Subscription implements Flow.Subscription, Runnable {
+        private Flow.Subscriber<? super List<GraphEvent<T>>> _subscriber;
+
+        // all guarded by this subscription
+        private ArrayDeque<GraphEvent<T>> _events = new ArrayDeque<GraphEvent<T>>();
+        private long _demand = 0;
+        private boolean _scheduled = false;
+        private boolean _cancelled = false;
+        private Throwable _error = null;
+
+        Subscription(Flow.Subscriber<? super List<GraphEvent<T>>> subscriber) {
+            _subscriber = subscriber;
+        }
+
+        void offer(GraphEvent<T> event) {
+            synchronized (this) {
+                if (_cancelled) {
+                    return;
+                }
+                if (_events.size() >= _capacity) {
+                    fail(new RuntimeException("Subscriber overflow!"));
+                } else {
+                    _events.add(event);
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (_cancelled) {
+                    return;
+                }
+                if (n <= 0) {
+                    fail(new IllegalArgumentException("Non-positive request!"));
+                } else {
+                    _demand = _demand + n < 0 ? Long.MAX_VALUE : _demand + n;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                _cancelled = true;
+                _events.clear();
+            }
+            _subscriptions.remove(this);
+        }
+
+        /**
+         * Cancels the subscription, with the error to be delivered to the subscriber.
+         * The caller holds the lock of the subscription.
+         */
+        private void fail(Throwable error) {
+            _cancelled = true;
+            _events.clear();
+            _error = error;
+            _subscriptions.remove(this);
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (_scheduled) {
+                    return;
+                }
+                _scheduled = true;
+            }
+            _executor.execute(this);
+        }
+
+        /**
+         * Delivers the buffered events, one batch per requested item, until the demand
+         * or the buffer is exhausted.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                List<GraphEvent<T>> batch = null;
+                Throwable error = null;
+                synchronized (this) {
+                    if (_error != null) {
+                        error = _error;
+                        _error = null;
+                    } else if (!_cancelled && _demand > 0 && !_events.isEmpty()) {
+                        batch = new ArrayList<GraphEvent<T>>(Math.min(_events.size(), _maxBatch));
+                        while (!_events.isEmpty() && batch.size() < _maxBatch) {
+                            batch.add(_events.poll());
+                        }
+                        _demand--;
+                    } else {
+                        _scheduled = false;
+                        return;
+                    }
+                }
+
+                if (error != null) {
+                    _subscriber.onError(error);
+                    continue;
+                }
+                try {
+                    _subscriber.onNext(batch);
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        fail(e);
+                    }
+                }
+            }
+        }
+    }
+}
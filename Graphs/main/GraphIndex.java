@@ -0,0 +1,165 @@
+package Graphs.main;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class definition for a compact, read-only snapshot of the structure of a Graph.
+ * Each Node is identified by an integer id in the range [0, N-1], assigned in the
+ * iteration order of the Graph (ascending hashCode() of the data). The Edges are
+ * stored as arrays of ids, both in their outgoing (egress) and incoming (ingress)
+ * direction, such that the neighbors of a Node can be visited without touching
+ * the Node objects.
+ * <br>The snapshot is built by the Graph once per version and is the GraphStorage
+ * all the structural queries of a heap based Graph run against.
+ * @param <T> - reference type of the Nodes in the indexed Graph.
+ * @see Graph#getVersion()
+ * @see GraphStorage
+ */
+class GraphIndex<T extends Comparable<T>> implements GraphStorage {
+    /**
+     * The data of each Node, indexed by the Node id.
+     */
+    private Object[] _data;
+    
+    /**
+     * The hashCode() of each Node's data, indexed by the Node id. The values are
+     * sorted, allowing the id of a Node to be found by binary search.
+     */
+    private int[] _hashes;
+    
+    /**
+     * Outgoing (egress) Edges: the targets of the Node with id <i>i</i> are stored in
+     * _outTargets between the positions _outOffsets[i] (inclusive) and _outOffsets[i+1].
+     */
+    private int[] _outOffsets;
+    private int[] _outTargets;
+    
+    /**
+     * Incoming (ingress) Edges: the sources of the Node with id <i>i</i> are stored in
+     * _inSources between the positions _inOffsets[i] (inclusive) and _inOffsets[i+1].
+     */
+    private int[] _inOffsets;
+    private int[] _inSources;
+    
+    /**
+     * Map of the Node names to their ids, built the first time a Node is looked up by name.
+     * Concurrent first lookups may each build the map, none of them waiting for the others.
+     */
+    private volatile Map<String, Integer> _names;
+    
+    /**
+     * Constructs the index for the given Nodes, given in ascending order of the hashCode()
+     * of their data, as they are iterated in the Graph.
+     * @param nodes - all the Nodes in the Graph.
+     */
+    GraphIndex(Collection<Node<T>> nodes) {
+        int n = nodes.size();
+        _data = new Object[n];
+        _hashes = new int[n];
+        _outOffsets = new int[n + 1];
+        int id = 0;
+        for (Node<T> node : nodes) {
+            _data[id] = node.getData();
+            _hashes[id] = node.getData().hashCode();
+            _outOffsets[id + 1] = _outOffsets[id] + node.getEdgeCount();
+            id++;
+        }
+        
+        _outTargets = new int[_outOffsets[n]];
+        int[] inDegrees = new int[n];
+        id = 0;
+        for (Node<T> node : nodes) {
+            int pos = _outOffsets[id];
+            for (Node<T> other : node.getEdges()) {
+                int target = idOf(other.getData());
+                _outTargets[pos++] = target;
+                inDegrees[target]++;
+            }
+            id++;
+        }
+        
+        _inOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            _inOffsets[i + 1] = _inOffsets[i] + inDegrees[i];
+        }
+        _inSources = new int[_outTargets.length];
+        int[] fill = Arrays.copyOf(_inOffsets, n);
+        for (int u = 0; u < n; u++) {
+            for (int pos = _outOffsets[u]; pos < _outOffsets[u + 1]; pos++) {
+                _inSources[fill[_outTargets[pos]]++] = u;
+            }
+        }
+    }
+    
+    @Override
+    public int size() {
+        return _data.length;
+    }
+    
+    @Override
+    public long edgeCount() {
+        return _outTargets.length;
+    }
+    
+    /**
+     * Gets the id of the Node containing the given <i>data</i>.
+     * @param data - the data of the Node.
+     * @return the id of the Node, or -1 if there is no such Node in the index.
+     */
+    int idOf(T data) {
+        int id = Arrays.binarySearch(_hashes, data.hashCode());
+        return id < 0 ? -1 : id;
+    }
+    
+    /**
+     * Gets the data of the Node with the given id.
+     * @param id - the id of the Node.
+     * @return reference to the data of the Node.
+     */
+    @SuppressWarnings("unchecked")
+    T getData(int id) {
+        return (T) _data[id];
+    }
+    
+    @Override
+    public String getName(int id) {
+        return _data[id].toString();
+    }
+    
+    @Override
+    public int indexOf(String name) {
+        Map<String, Integer> names = _names;
+        if (names == null) {
+            names = new HashMap<String, Integer>();
+            for (int id = 0; id < _data.length; id++) {
+                names.put(getName(id), id);
+            }
+            _names = names;
+        }
+        Integer id = names.get(name);
+        return id == null ? -1 : id;
+    }
+    
+    @Override
+    public int outDegree(int id) {
+        return _outOffsets[id + 1] - _outOffsets[id];
+    }
+    
+    @Override
+    public int outNeighbor(int id, int i) {
+        return _outTargets[_outOffsets[id] + i];
+    }
+    
+    @Override
+    public int inDegree(int id) {
+        return _inOffsets[id + 1] - _inOffsets[id];
+    }
+    
+    @Override
+    public int inNeighbor(int id, int i) {
+        return _inSources[_inOffsets[id] + i];
+    }
+}
@@ -0,0 +1,497 @@
+package Graphs.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Class definition for the write-ahead journal of a Graph, such that a long lived Graph
+ * can be recovered after a crash in seconds rather than rebuilt from its sources.
+ * <p>
+ * Every successful addNode, addEdge, removeEdge and removeNode of the journaled Graph is
+ * appended to an in-memory batch. A background thread writes the batch to an append-only
+ * binary file and forces it to disk every few milliseconds (group commit), such that
+ * one fsync covers all the mutations made in between and writers never wait on the disk.
+ * Every so many mutations the whole Graph is written to a compacted snapshot and the
+ * journal restarts empty; recovery loads the latest snapshot and replays only the
+ * journal written after it. The writer only captures the in-memory structure of the
+ * Graph (its GraphStorage) at that point, the snapshot file is written and forced to
+ * disk by the background thread.
+ * <br>E.g.:<pre>
+ * GraphJournal&lt;String&gt; journal = GraphJournal.open(directory, name -&gt; name);
+ * Graph&lt;String&gt; g = journal.getGraph();
+ * g.addNode("A");
+ * ...
+ * journal.close();</pre>
+ * The directory holds two files per generation: "snapshot-&lt;n&gt;", the Graph at the
+ * start of the generation (absent for generation 0, the empty Graph), and "journal-&lt;n&gt;",
+ * the batches of mutations made since, each one a length, a CRC32 checksum and the records.
+ * A batch torn by a crash fails its checksum and is dropped along with anything after it.
+ * <p>
+ * Node data are stored as their toString() values and parsed back on recovery, so the
+ * toString() of two different Nodes must differ. The Graph must only be modified, and
+ * snapshot() only called, by one thread at a time.
+ * @see Graph
+ */
+public class GraphJournal<T extends Comparable<T>> implements Closeable {
+    /**
+     * Default delay between two group commits, in milliseconds.
+     */
+    public static final long SYNC_MILLIS = 10;
+
+    /**
+     * Default number of mutations after which a new snapshot is written.
+     */
+    public static final int SNAPSHOT_EVERY = 1 << 20;
+
+    // record types, part of the file format: never renumber them
+    private static final byte ADD_NODE = 1;
+    private static final byte ADD_EDGE = 2;
+    private static final byte REMOVE_EDGE = 3;
+    private static final byte REMOVE_NODE = 4;
+
+    private static final int SNAPSHOT_MAGIC = 0x47534e50;
+
+    private java.nio.file.Path _directory;
+    private Graph<T> _graph;
+    private int _snapshotEvery;
+    private ScheduledExecutorService _flusher;
+
+    /**
+     * Records appended since the last group commit, guarded by this journal.
+     */
+    private ByteArrayOutputStream _pending;
+    private DataOutputStream _records;
+
+    /**
+     * Structure of the Graph to be written to the next snapshot, along with the records
+     * appended before it was captured, or null if no snapshot is due. Guarded by this journal.
+     */
+    private GraphStorage _snapshotStorage;
+    private byte[] _snapshotRecords;
+
+    /**
+     * Lock held while writing to the journal file, such that a group commit
+     * can run without blocking the threads appending new records.
+     */
+    private final Object _flushLock = new Object();
+    private FileChannel _channel;
+    private long _generation;
+    private int _mutations;
+    private volatile IOException _failure;
+
+    private GraphJournal(java.nio.file.Path directory, Graph<T> graph, long generation, int snapshotEvery) {
+        _directory = directory;
+        _graph = graph;
+        _generation = generation;
+        _snapshotEvery = snapshotEvery;
+        _pending = new ByteArrayOutputStream();
+        _records = new DataOutputStream(_pending);
+    }
+
+    /**
+     * Opens the journal in the given directory with the default group commit delay
+     * and snapshot interval, recovering its Graph.
+     * @see GraphJournal#open(java.nio.file.Path, Function, long, int)
+     */
+    public static <T extends Comparable<T>> GraphJournal<T> open(java.nio.file.Path directory, Function<String, T> parser) throws IOException {
+        return open(directory, parser, SYNC_MILLIS, SNAPSHOT_EVERY);
+    }
+
+    /**
+     * Opens the journal in the given directory, creating it if needed, and recovers its
+     * Graph from the latest snapshot and the mutations journaled after it. From then on,
+     * all the mutations of the Graph returned by getGraph() are journaled.
+     * @param directory - the directory holding the snapshots and journals.
+     * @param parser - parses the data of a Node back from its toString() value.
+     * @param syncMillis - delay between two group commits, in milliseconds.
+     * @param snapshotEvery - number of mutations after which a new snapshot is written,
+     * or 0 to only write snapshots when snapshot() is called.
+     * @return the journal, along with its recovered Graph.
+     * @throws IOException if the directory cannot be read or written.
+     */
+    public static <T extends Comparable<T>> GraphJournal<T> open(java.nio.file.Path directory, Function<String, T> parser,
+            long syncMillis, int snapshotEvery) throws IOException {
+        Files.createDirectories(directory);
+        long generation = 0;
+        try (DirectoryStream<java.nio.file.Path> files = Files.newDirectoryStream(directory, "snapshot-*")) {
+            for (java.nio.file.Path file : files) {
+                generation = Math.max(generation, generationOf(file));
+            }
+        }
+
+        Graph<T> graph = new Graph<T>();
+        if (generation > 0) {
+            readSnapshot(directory.resolve("snapshot-" + generation), graph, parser);
+        }
+        GraphJournal<T> journal = new GraphJournal<T>(directory, graph, generation, snapshotEvery);
+        journal._channel = FileChannel.open(journal.journalFile(generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journal._channel.truncate(replay(journal._channel, graph, parser));
+        journal._channel.position(journal._channel.size());
+        journal.deleteOtherGenerations();
+
+        graph.setJournal(journal);
+        journal._flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "GraphJournal " + directory);
+            thread.setDaemon(true);
+            return thread;
+        });
+        journal._flusher.scheduleWithFixedDelay(journal::groupCommit, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        return journal;
+    }
+
+    /**
+     * Gets the Graph recovered by this journal, whose mutations are journaled.
+     * @return the journaled Graph.
+     */
+    public Graph<T> getGraph() {
+        return _graph;
+    }
+
+    /**
+     * Gets the generation of the journal, incremented by each snapshot.
+     * @return the number of the current snapshot.
+     */
+    public long getGeneration() {
+        synchronized (_flushLock) {
+            return _generation;
+        }
+    }
+
+    /**
+     * Checks the journal can still record the mutations of the Graph. This is called
+     * before the Graph is modified, such that a failed journal leaves the Graph as
+     * it was rather than out of step with its files.
+     * @throws RuntimeException if the journal failed to write to its files.
+     */
+    void checkFailure() {
+        if (_failure != null) {
+            throw new RuntimeException("Journal failure!", _failure);
+        }
+    }
+
+    /**
+     * Appends a mutation of the Graph to the pending batch, and hands a new snapshot
+     * over to the background thread if enough mutations were journaled since the last one.
+     * @param type - the type of the change, recorded as its record type.
+     * @param data - the data of the Node, or of the Node the Edge starts from.
+     * @param to - the data of the Node the Edge ends at, or null for Node records.
+     * @throws RuntimeException if the journal failed to write to its files.
+     */
+    void append(GraphEvent.Type type, T data, T to) {
+        checkFailure();
+        try {
+            synchronized (this) {
+                _records.writeByte(recordType(type));
+                _records.writeUTF(data.toString());
+                if (to != null) {
+                    _records.writeUTF(to.toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Journal failure!", e);
+        }
+        if (_snapshotEvery > 0 && ++_mutations >= _snapshotEvery) {
+            captureSnapshot();
+            _flusher.execute(this::groupCommit);
+        }
+    }
+
+    /**
+     * Captures the current structure of the Graph for the next snapshot, which the next
+     * sync() writes. The records appended so far are covered by the snapshot, while
+     * the records appended from now on go to the journal of the next generation.
+     * It must not run concurrently with mutations of the Graph.
+     */
+    private void captureSnapshot() {
+        GraphStorage storage = _graph.getStorage();
+        synchronized (this) {
+            byte[] records = _pending.toByteArray();
+            if (_snapshotRecords != null) {
+                // a snapshot still waiting to be written is superseded by this one
+                byte[] all = Arrays.copyOf(_snapshotRecords, _snapshotRecords.length + records.length);
+                System.arraycopy(records, 0, all, _snapshotRecords.length, records.length);
+                records = all;
+            }
+            _pending.reset();
+            _snapshotStorage = storage;
+            _snapshotRecords = records;
+        }
+        _mutations = 0;
+    }
+
+    /**
+     * Writes the pending batch of mutations to the journal file and forces it to disk,
+     * after writing the snapshot captured since the last call, if any.
+     * The mutations journaled before the call are durable when it returns.
+     * @throws IOException if the journal or snapshot files cannot be written.
+     */
+    public void sync() throws IOException {
+        synchronized (_flushLock) {
+            if (_failure != null) {
+                throw _failure;
+            }
+            GraphStorage storage;
+            byte[] records;
+            byte[] batch;
+            synchronized (this) {
+                storage = _snapshotStorage;
+                records = _snapshotRecords;
+                _snapshotStorage = null;
+                _snapshotRecords = null;
+                batch = _pending.toByteArray();
+                _pending.reset();
+            }
+            try {
+                if (storage != null) {
+                    // the records before the snapshot stay durable should the snapshot fail
+                    write(records);
+                    writeSnapshot(storage);
+                }
+                write(batch);
+            } catch (IOException e) {
+                _failure = e;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Appends a batch of records to the journal file and forces it to disk.
+     * The caller holds the flush lock.
+     */
+    private void write(byte[] batch) throws IOException {
+        if (batch.length == 0) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(batch);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + batch.length);
+        buffer.putInt(batch.length).putInt((int) crc.getValue()).put(batch).flip();
+        while (buffer.hasRemaining()) {
+            _channel.write(buffer);
+        }
+        _channel.force(false);
+    }
+
+    private void groupCommit() {
+        try {
+            sync();
+        } catch (IOException e) {
+            // kept in _failure, thrown by the next mutation
+        }
+    }
+
+    /**
+     * Writes the current Graph to a new, compacted snapshot and starts a new, empty
+     * journal, deleting the previous snapshot and journal. The snapshot is written
+     * aside and renamed once complete, so a crash at any point leaves either the old
+     * generation or the new one to recover from. It must not run concurrently with
+     * mutations of the Graph.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void snapshot() throws IOException {
+        captureSnapshot();
+        sync();
+    }
+
+    /**
+     * Writes a snapshot of the given structure as the next generation, and starts its
+     * journal. The caller holds the flush lock.
+     */
+    private void writeSnapshot(GraphStorage storage) throws IOException {
+        long next = _generation + 1;
+        java.nio.file.Path temporary = _directory.resolve("snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            writeSnapshot(storage, out);
+            out.flush();
+            channel.force(false);
+        }
+        Files.move(temporary, _directory.resolve("snapshot-" + next), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+
+        _channel.close();
+        _channel = FileChannel.open(journalFile(next), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        _generation = next;
+        deleteOtherGenerations();
+    }
+
+    /**
+     * Forces the entries of the directory to disk, such that the rename of a snapshot
+     * survives a crash.
+     */
+    private void forceDirectory() throws IOException {
+        try (FileChannel directory = FileChannel.open(_directory, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened on every platform (e.g. Windows), where the rename is durable as is
+        }
+    }
+
+    /**
+     * Commits the pending mutations and stops journaling the Graph,
+     * which remains usable without a journal.
+     */
+    @Override
+    public void close() throws IOException {
+        _flusher.shutdown();
+        _graph.setJournal(null);
+        synchronized (_flushLock) {
+            try {
+                sync();
+            } finally {
+                _channel.close();
+            }
+        }
+    }
+
+    /**
+     * Gets the record type of a change, independent of the declaration order of the types.
+     */
+    private static byte recordType(GraphEvent.Type type) {
+        switch (type) {
+        case NODE_ADDED:
+            return ADD_NODE;
+        case EDGE_ADDED:
+            return ADD_EDGE;
+        case EDGE_REMOVED:
+            return REMOVE_EDGE;
+        case NODE_REMOVED:
+            return REMOVE_NODE;
+        default:
+            throw new RuntimeException("Unknown change " + type + "!");
+        }
+    }
+
+    private java.nio.file.Path journalFile(long generation) {
+        return _directory.resolve("journal-" + generation);
+    }
+
+    /**
+     * Gets the generation of a snapshot or journal file from its name.
+     * @return the generation, or -1 if the file is not a snapshot or journal.
+     */
+    private static long generationOf(java.nio.file.Path file) {
+        String name = file.getFileName().toString();
+        return name.matches("(snapshot|journal)-\\d+") ? Long.parseLong(name.substring(name.indexOf('-') + 1)) : -1;
+    }
+
+    private void deleteOtherGenerations() throws IOException {
+        try (DirectoryStream<java.nio.file.Path> files = Files.newDirectoryStream(_directory)) {
+            for (java.nio.file.Path file : files) {
+                long generation = generationOf(file);
+                if (generation >= 0 && generation != _generation) {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.deleteIfExists(_directory.resolve("snapshot.tmp"));
+    }
+
+    /**
+     * Writes the names of all the Nodes followed by the outgoing Edges of each Node.
+     */
+    private static void writeSnapshot(GraphStorage storage, DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(storage.size());
+        for (int id = 0; id < storage.size(); id++) {
+            out.writeUTF(storage.getName(id));
+        }
+        for (int id = 0; id < storage.size(); id++) {
+            out.writeInt(storage.outDegree(id));
+            for (int i = 0; i < storage.outDegree(id); i++) {
+                out.writeInt(storage.outNeighbor(id, i));
+            }
+        }
+    }
+
+    private static <T extends Comparable<T>> void readSnapshot(java.nio.file.Path file, Graph<T> graph, Function<String, T> parser) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Corrupt snapshot " + file);
+            }
+            @SuppressWarnings("unchecked")
+            T[] data = (T[]) new Comparable<?>[in.readInt()];
+            for (int id = 0; id < data.length; id++) {
+                data[id] = parser.apply(in.readUTF());
+                graph.addNode(data[id]);
+            }
+            for (int id = 0; id < data.length; id++) {
+                for (int i = in.readInt(); i > 0; i--) {
+                    graph.addEdge(data[id], data[in.readInt()]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the journal onto the Graph, batch by batch, up to the end of the file or
+     * the first batch torn by a crash.
+     * @return the length of the valid part of the journal.
+     */
+    private static <T extends Comparable<T>> long replay(FileChannel channel, Graph<T> graph, Function<String, T> parser) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 16));
+        long valid = 0;
+        while (channel.size() - valid >= 8) {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > channel.size() - valid - 8) {
+                break;
+            }
+            byte[] batch = new byte[length];
+            in.readFully(batch);
+            CRC32 crc = new CRC32();
+            crc.update(batch);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            DataInputStream records = new DataInputStream(new ByteArrayInputStream(batch));
+            while (records.available() > 0) {
+                byte type = records.readByte();
+                if (type < ADD_NODE || type > REMOVE_NODE) {
+                    throw new IOException("Corrupt journal record " + type);
+                }
+                T data = parser.apply(records.readUTF());
+                switch (type) {
+                case ADD_NODE:
+                    graph.addNode(data);
+                    break;
+                case ADD_EDGE:
+                    graph.addEdge(data, parser.apply(records.readUTF()));
+                    break;
+                case REMOVE_EDGE:
+                    graph.removeEdge(data, parser.apply(records.readUTF()));
+                    break;
+                case REMOVE_NODE:
+                    graph.removeNode(data);
+                    break;
+                }
+            }
+            valid += 8 + batch.length;
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,288 @@
+package Graphs.main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class serving the structural queries of a single, resident Graph to local clients
+ * over a loopback TCP socket or a Unix domain socket.
+ * <p>
+ * Each connection is handled on its own virtual thread, such that tens of thousands of
+ * concurrent clients only cost as many (cheap) virtual threads, with no pool of platform
+ * threads to size. Concurrent requests for the same query are batched: the first one
+ * computes the result while the others wait for it and share it.
+ * <p>
+ * The protocol is line based. A request is one line, the query name followed by its
+ * space separated arguments. The response is a sequence of lines terminated by an empty
+ * line; a failed request gets a single line starting with "ERROR ". Large results
+ * (dijkstra, topoSort, degrees) are streamed one line per entry rather than built
+ * in memory. Supported requests:
+ * <pre>
+ * isConnected           > true
+ * isDAGraph             > false
+ * countPartitions       > 3
+ * topoSort              > 0 A E X Z        (one line per position, in storage order, "null" if not a DAG)
+ * inDegrees, outDegrees > 2 B F            (one line per degree, in storage order)
+ * dijkstra A            > A 0              (one line per Node, in storage order)
+ * canReach A D          > true
+ * shortestPath A D      > A > B > D        ("null" if D cannot be reached)
+ * </pre>
+ * The served Graph must not be modified while the server is running.
+ * @see Graph
+ */
+public class GraphServer implements Closeable {
+    private Graph<?> _graph;
+    private ServerSocketChannel _server;
+    private ExecutorService _executor;
+
+    /**
+     * Map of the requests being executed to their pending results, used to
+     * batch identical concurrent requests into a single execution.
+     */
+    private Map<String, CompletableFuture<Object>> _inFlight;
+
+    /**
+     * Constructs a new server for the given Graph. The server does not accept
+     * connections until it is started.
+     * @param graph - the Graph to be queried by the clients.
+     * @see #start(SocketAddress)
+     */
+    public GraphServer(Graph<?> graph) {
+        _graph = graph;
+        _inFlight = new ConcurrentHashMap<String, CompletableFuture<Object>>();
+    }
+
+    /**
+     * Starts accepting connections on the given address.
+     * @param address - an InetSocketAddress (expected to be a loopback address) or
+     * a UnixDomainSocketAddress. A port of 0 picks any free port.
+     * @return the address the server is bound to.
+     * @throws IOException if the server cannot bind to the address.
+     */
+    public SocketAddress start(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            _server = ServerSocketChannel.open();
+        }
+        _server.bind(address, 1024);
+        _executor = Executors.newVirtualThreadPerTaskExecutor();
+        _executor.submit(this::acceptLoop);
+        return _server.getLocalAddress();
+    }
+
+    /**
+     * Stops accepting connections and releases the server socket. Connections
+     * still open are closed as their clients disconnect.
+     */
+    @Override
+    public void close() throws IOException {
+        SocketAddress address = _server.getLocalAddress();
+        _server.close();
+        _executor.shutdown();
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+    }
+
+    private void acceptLoop() {
+        try {
+            while (true) {
+                SocketChannel client = _server.accept();
+                _executor.submit(() -> serve(client));
+            }
+        } catch (IOException e) {
+            // the server socket was closed
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8))) {
+            String request;
+            while ((request = in.readLine()) != null) {
+                request = request.trim();
+                if (request.isEmpty()) {
+                    continue;
+                }
+                try {
+                    write(out, execute(request));
+                } catch (RuntimeException e) {
+                    out.write("ERROR " + (e.getMessage() != null ? e.getMessage() : e.toString()) + "\n");
+                }
+                out.write("\n");
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client disconnected
+        }
+    }
+
+    /**
+     * Executes a request, or waits for the result of an identical request already
+     * being executed on behalf of another client.
+     * @param request - the request line.
+     * @return the result of the request.
+     */
+    private Object execute(String request) {
+        CompletableFuture<Object> pending = new CompletableFuture<Object>();
+        CompletableFuture<Object> running = _inFlight.putIfAbsent(request, pending);
+        if (running != null) {
+            try {
+                return running.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException("Query failed: " + e.getCause() + "!", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted!");
+            }
+        }
+
+        try {
+            Object result = query(request.split(" +"));
+            pending.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // complete on errors as well (e.g. StackOverflowError), or the waiting clients never return
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            _inFlight.remove(request, pending);
+        }
+    }
+
+    private Object query(String[] tokens) {
+        GraphStorage storage = _graph.getStorage();
+        switch (tokens[0]) {
+        case "isConnected":
+            return _graph.isConnected();
+        case "isDAGraph":
+            return _graph.isDAGraph();
+        case "countPartitions":
+            return _graph.countPartitions();
+        case "topoSort":
+            return _graph.topoSortLevels();
+        case "inDegrees":
+            return _graph.inDegreeLevels();
+        case "outDegrees":
+            return _graph.outDegreeLevels();
+        case "dijkstra":
+            checkArguments(tokens, 1);
+            return Graph.distances(storage, idOf(storage, tokens[1]));
+        case "canReach":
+            checkArguments(tokens, 2);
+            return shortestPath(storage, tokens[1], tokens[2]) != null;
+        case "shortestPath":
+            checkArguments(tokens, 2);
+            return shortestPath(storage, tokens[1], tokens[2]);
+        default:
+            throw new RuntimeException("Unknown query " + tokens[0]);
+        }
+    }
+
+    private static void checkArguments(String[] tokens, int count) {
+        if (tokens.length != count + 1) {
+            throw new RuntimeException(tokens[0] + " expects " + count + " argument(s)");
+        }
+    }
+
+    private static int idOf(GraphStorage storage, String name) {
+        int id = storage.indexOf(name);
+        if (id < 0) {
+            throw new RuntimeException("Node(s) not in the graph!");
+        }
+        return id;
+    }
+
+    private static Path<String> shortestPath(GraphStorage storage, String from, String to) {
+        return new PathSearch<String>(storage, storage::getName, null).find(idOf(storage, from), idOf(storage, to));
+    }
+
+    /**
+     * Streams the result of a query to a client, one line per entry.
+     */
+    private void write(Writer out, Object result) throws IOException {
+        if (result instanceof int[]) {
+            int[] distances = (int[]) result;
+            GraphStorage storage = _graph.getStorage();
+            for (int id = 0; id < distances.length; id++) {
+                out.write(storage.getName(id) + " " + distances[id] + "\n");
+            }
+        } else if (result instanceof NodeLevels) {
+            NodeLevels levels = (NodeLevels) result;
+            for (int level = 0; level < levels.getLevelCount(); level++) {
+                if (levels.getCount(level) == 0) {
+                    continue;
+                }
+                out.write(Integer.toString(level));
+                for (int id : levels.getNodes(level).toArray()) {
+                    out.write(" " + levels.getName(id));
+                }
+                out.write("\n");
+            }
+        } else {
+            out.write(String.valueOf(result) + "\n");
+        }
+    }
+
+    /**
+     * Runs a resident server for a Graph read from a file in the same format as
+     * the one produced by Graph.toString(), e.g. "A > B C" on each line.
+     * <pre>GraphServer &lt;graph file&gt; &lt;port | unix socket path&gt;</pre>
+     * @param args - the graph file and the port (on the loopback interface) or
+     * the path of the Unix domain socket to listen on.
+     * @throws IOException if the file cannot be read or the server cannot start.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String[]> lines = new ArrayList<String[]>();
+        for (String line : Files.readAllLines(Paths.get(args[0]))) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line.trim().split(" +"));
+            }
+        }
+        Graph<String> graph = new Graph<String>();
+        for (String[] tokens : lines) {
+            graph.addNode(tokens[0]);
+        }
+        for (String[] tokens : lines) {
+            for (int i = 2; i < tokens.length; i++) {
+                graph.addEdge(tokens[0], tokens[i]);
+            }
+        }
+
+        SocketAddress address = args[1].matches("\\d+")
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[1]))
+                : UnixDomainSocketAddress.of(args[1]);
+        GraphServer server = new GraphServer(graph);
+        System.out.println("Serving " + graph.size() + " nodes on " + server.start(address));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,151 @@
+package Graphs.main;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Class definition for one shard of a Graph: the Nodes of a single partition (weakly
+ * connected component) along with all their Edges, which by definition never leave
+ * the partition. The shard is itself a GraphStorage with its own, local Node ids in
+ * the range [0, size() - 1], such that any algorithm of the Graph can run on it alone.
+ * @see ShardedGraph
+ * @see Graph#shard()
+ */
+public class GraphShard implements GraphStorage {
+    private GraphStorage _parent;
+    private int _index;
+    
+    /**
+     * The id, in the parent storage, of each Node in the shard, indexed by the local id.
+     */
+    private int[] _globalIds;
+    
+    /**
+     * The local id of each Node in the parent storage, within the shard holding it.
+     * This array is shared by all the shards of the same storage.
+     */
+    private int[] _localIds;
+    
+    // outgoing and incoming Edges as compressed sparse rows of local ids
+    private int[] _outOffsets;
+    private int[] _outTargets;
+    private int[] _inOffsets;
+    private int[] _inSources;
+    
+    /**
+     * Constructs the shard for the given Nodes of a parent storage.
+     * @param parent - the storage of the whole Graph.
+     * @param index - the number of this shard (its partition).
+     * @param globalIds - the ids in the parent storage of the Nodes in this shard.
+     * @param localIds - array mapping the ids in the parent storage to their local ids,
+     * already filled in for the Nodes of this shard.
+     */
+    GraphShard(GraphStorage parent, int index, int[] globalIds, int[] localIds) {
+        _parent = parent;
+        _index = index;
+        _globalIds = globalIds;
+        _localIds = localIds;
+        _outOffsets = new int[globalIds.length + 1];
+        _inOffsets = new int[globalIds.length + 1];
+        for (int id = 0; id < globalIds.length; id++) {
+            _outOffsets[id + 1] = _outOffsets[id] + parent.outDegree(globalIds[id]);
+            _inOffsets[id + 1] = _inOffsets[id] + parent.inDegree(globalIds[id]);
+        }
+        _outTargets = new int[_outOffsets[globalIds.length]];
+        _inSources = new int[_inOffsets[globalIds.length]];
+        for (int id = 0; id < globalIds.length; id++) {
+            for (int i = 0; i < parent.outDegree(globalIds[id]); i++) {
+                _outTargets[_outOffsets[id] + i] = localIds[parent.outNeighbor(globalIds[id], i)];
+            }
+            for (int i = 0; i < parent.inDegree(globalIds[id]); i++) {
+                _inSources[_inOffsets[id] + i] = localIds[parent.inNeighbor(globalIds[id], i)];
+            }
+        }
+    }
+    
+    /**
+     * Gets the number of this shard, which is the number of its partition in the Graph.
+     * @return the index of the shard in ShardedGraph.getShards().
+     */
+    public int getIndex() {
+        return _index;
+    }
+    
+    /**
+     * Gets the id of a Node of this shard in the storage of the whole Graph.
+     * @param id - the local id of the Node.
+     * @return the id of the Node in the storage of the Graph.
+     */
+    public int toGlobal(int id) {
+        return _globalIds[id];
+    }
+    
+    /**
+     * Gets the local id of a Node of this shard from its id in the storage of the whole Graph.
+     */
+    int toLocal(int global) {
+        return _localIds[global];
+    }
+    
+    /**
+     * Writes this shard in the same format as Graph.toString(), one line per Node
+     * followed by its outgoing (egress) Edges, such that it can be loaded on its own
+     * by another process (e.g. a GraphServer).
+     * @param out - the writer receiving the shard.
+     * @throws IOException if the writer fails.
+     * @see GraphServer#main(String[])
+     */
+    public void export(Writer out) throws IOException {
+        for (int id = 0; id < size(); id++) {
+            out.write(getName(id) + " > ");
+            for (int i = 0; i < outDegree(id); i++) {
+                out.write((i > 0 ? " " : "") + getName(outNeighbor(id, i)));
+            }
+            out.write("\n");
+        }
+    }
+    
+    @Override
+    public int size() {
+        return _globalIds.length;
+    }
+    
+    @Override
+    public long edgeCount() {
+        return _outTargets.length;
+    }
+    
+    @Override
+    public String getName(int id) {
+        return _parent.getName(_globalIds[id]);
+    }
+    
+    @Override
+    public int indexOf(String name) {
+        int global = _parent.indexOf(name);
+        if (global < 0 || toLocal(global) >= size() || toGlobal(toLocal(global)) != global) {
+            return -1;
+        }
+        return toLocal(global);
+    }
+    
+    @Override
+    public int outDegree(int id) {
+        return _outOffsets[id + 1] - _outOffsets[id];
+    }
+    
+    @Override
+    public int outNeighbor(int id, int i) {
+        return _outTargets[_outOffsets[id] + i];
+    }
+    
+    @Override
+    public int inDegree(int id) {
+        return _inOffsets[id + 1] - _inOffsets[id];
+    }
+    
+    @Override
+    public int inNeighbor(int id, int i) {
+        return _inSources[_inOffsets[id] + i];
+    }
+}
@@ -0,0 +1,72 @@
+package Graphs.main;
+
+/**
+ * Interface definition for the storage backing the structure of a Graph.
+ * The storage identifies each Node by an integer id in the range [0, N-1] and gives
+ * access to its name and to the ids of its neighbors, in both the outgoing (egress)
+ * and incoming (ingress) direction. The structural queries of the Graph (isConnected,
+ * isDAGraph, topoSort, dijkstra, countPartitions, ...) are implemented against this
+ * interface, such that they run unchanged over any storage.
+ * <br>Storage implementations are read-only: their content never changes once created.
+ * @see Graph#getStorage()
+ * @see Graph#fromStorage(GraphStorage)
+ * @see OffHeapStorage
+ */
+public interface GraphStorage {
+    
+    /**
+     * Gets the number of Nodes in the storage.
+     * @return number of Nodes, all the Node ids are in the range [0, size() - 1].
+     */
+    public int size();
+    
+    /**
+     * Gets the number of Edges in the storage.
+     * @return number of (directed) Edges.
+     */
+    public long edgeCount();
+    
+    /**
+     * Gets the name of a Node, as given by the toString() of its data.
+     * @param id - the id of the Node.
+     * @return the name of the Node.
+     */
+    public String getName(int id);
+    
+    /**
+     * Gets the id of the Node with the given name.
+     * @param name - the name of the Node.
+     * @return the id of the Node, or -1 if there is no Node with this name.
+     */
+    public int indexOf(String name);
+    
+    /**
+     * Gets the number of outgoing (egress) Edges of a Node.
+     * @param id - the id of the Node.
+     * @return the out-degree of the Node.
+     */
+    public int outDegree(int id);
+    
+    /**
+     * Gets the i-th outgoing (egress) neighbor of a Node.
+     * @param id - the id of the Node.
+     * @param i - position of the neighbor, in the range [0, outDegree(id) - 1].
+     * @return the id of the neighbor.
+     */
+    public int outNeighbor(int id, int i);
+    
+    /**
+     * Gets the number of incoming (ingress) Edges of a Node.
+     * @param id - the id of the Node.
+     * @return the in-degree of the Node.
+     */
+    public int inDegree(int id);
+    
+    /**
+     * Gets the i-th incoming (ingress) neighbor of a Node.
+     * @param id - the id of the Node.
+     * @param i - position of the neighbor, in the range [0, inDegree(id) - 1].
+     * @return the id of the neighbor.
+     */
+    public int inNeighbor(int id, int i);
+}
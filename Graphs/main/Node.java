@@ -1,8 +1,11 @@
 package Graphs.main;
+import java.util.AbstractCollection;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
@@ -19,18 +22,30 @@ import java.util.TreeSet;
  * be compared to each other.<br>
  * E.g.: Node&lt;Integer&gt; n = new Node&ltInteger&gt(16);
  * @see Node#_data
- * @see Node#_edges
+ * @see Node#_edgeNodes
  * @see Node#_state
  * @see Graph
  */
 public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
+    /**
+     * Largest number of Edges kept in a sorted array. Beyond it the Edges
+     * are kept in an open addressing hash table.
+     */
+    private static final int SMALL_EDGES = 8;
+    
     /**
      * Collection of outgoing (egress) Edges originating in this Node.
-     * <br>This is a private Map keying each of the neighboring Nodes by 
-     * the hashCode() of their data.
+     * <br>The neighboring Nodes are keyed by the hashCode() of their data, stored
+     * in _edgeKeys next to the Node in _edgeNodes, with no per-Edge objects. The layout
+     * adapts to the number of Edges:<br>
+     * - no Edges: both arrays are null,<br>
+     * - up to SMALL_EDGES Edges: the first _edgeCount entries are sorted by key,<br>
+     * - more Edges: the arrays are a linear probing hash table, empty slots hold a null Node.
      * @see java.lang.Object#hashCode()
      */
-    private Map<Integer, Node<T>> _edges;
+    private int[] _edgeKeys;
+    private Node<T>[] _edgeNodes;
+    private int _edgeCount;
     
     /**
      * The generic data contained in this Node. The type of the data
@@ -51,17 +66,17 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
     /**
      * Constructs a new Node containing the given <i>data</i> object.
      * The new Node is created with _state value 0 and with an empty
-     * collection of _edges. The data object needs to be a reference,
+     * collection of edges. The data object needs to be a reference,
      * Comparable type to allow Nodes to compare to each other.
      * E.g: <pre>Node&ltCharacter&gt n = new Node&ltCharacter&gt('X');</pre>
      * @param data - the data object contained in this node.
      * @see Node
-     * @see Node#_edges
+     * @see Node#_edgeNodes
      * @see Node#_state
      */
     public Node(T data) {
         _data = data;
-        _edges = new HashMap<Integer, Node<T>>();
+        _edgeCount = 0;
         _state = 0;
     }
     
@@ -103,7 +118,140 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
      * @see Node#removeEdge(Node)
      */
     public void addEdge(Node<T> otherNode) {
-        _edges.put(otherNode._data.hashCode(), otherNode);
+        int key = otherNode._data.hashCode();
+        if (isHashed()) {
+            if ((_edgeCount + 1) * 2 > _edgeKeys.length) {
+                rehash(_edgeKeys.length * 2);
+            }
+            hashPut(key, otherNode);
+            return;
+        }
+        
+        int pos = _edgeKeys == null ? -1 : Arrays.binarySearch(_edgeKeys, 0, _edgeCount, key);
+        if (pos >= 0) {
+            _edgeNodes[pos] = otherNode;
+            return;
+        }
+        if (_edgeKeys == null || _edgeCount == _edgeKeys.length) {
+            if (_edgeCount == SMALL_EDGES) {
+                rehash(4 * SMALL_EDGES);
+                hashPut(key, otherNode);
+                return;
+            }
+            resize(_edgeKeys == null ? 1 : _edgeCount * 2);
+        }
+        pos = -pos - 1;
+        System.arraycopy(_edgeKeys, pos, _edgeKeys, pos + 1, _edgeCount - pos);
+        System.arraycopy(_edgeNodes, pos, _edgeNodes, pos + 1, _edgeCount - pos);
+        _edgeKeys[pos] = key;
+        _edgeNodes[pos] = otherNode;
+        _edgeCount++;
+    }
+    
+    private boolean isHashed() {
+        return _edgeKeys != null && _edgeKeys.length > SMALL_EDGES;
+    }
+    
+    /**
+     * Gets the position of the Edge to the Node whose data has the given hashCode().
+     * @return the position in the arrays, or -1 if there is no such Edge.
+     */
+    private int find(int key) {
+        if (_edgeKeys == null) {
+            return -1;
+        }
+        if (!isHashed()) {
+            int pos = Arrays.binarySearch(_edgeKeys, 0, _edgeCount, key);
+            return pos < 0 ? -1 : pos;
+        }
+        int mask = _edgeKeys.length - 1;
+        for (int slot = slotOf(key, mask); _edgeNodes[slot] != null; slot = (slot + 1) & mask) {
+            if (_edgeKeys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    private static int slotOf(int key, int mask) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+    
+    private void hashPut(int key, Node<T> otherNode) {
+        int mask = _edgeKeys.length - 1;
+        int slot = slotOf(key, mask);
+        while (_edgeNodes[slot] != null && _edgeKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (_edgeNodes[slot] == null) {
+            _edgeCount++;
+        }
+        _edgeKeys[slot] = key;
+        _edgeNodes[slot] = otherNode;
+    }
+    
+    /**
+     * Moves the Edges into a hash table of the given (power of 2) capacity.
+     */
+    private void rehash(int capacity) {
+        int[] keys = _edgeKeys;
+        Node<T>[] nodes = _edgeNodes;
+        _edgeKeys = new int[capacity];
+        _edgeNodes = newNodes(capacity);
+        _edgeCount = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (nodes[i] != null) {
+                hashPut(keys[i], nodes[i]);
+            }
+        }
+    }
+    
+    /**
+     * Resizes the sorted arrays to the given capacity, or moves the Edges back from
+     * the hash table into sorted arrays.
+     */
+    private void resize(int capacity) {
+        if (isHashed()) {
+            int[] keys = new int[capacity];
+            Node<T>[] nodes = newNodes(capacity);
+            int count = 0;
+            for (int i = 0; i < _edgeKeys.length; i++) {
+                if (_edgeNodes[i] != null) {
+                    keys[count] = _edgeKeys[i];
+                    nodes[count++] = _edgeNodes[i];
+                }
+            }
+            sortByKey(keys, nodes, count);
+            _edgeKeys = keys;
+            _edgeNodes = nodes;
+        } else if (_edgeKeys == null) {
+            _edgeKeys = new int[capacity];
+            _edgeNodes = newNodes(capacity);
+        } else {
+            _edgeKeys = Arrays.copyOf(_edgeKeys, capacity);
+            _edgeNodes = Arrays.copyOf(_edgeNodes, capacity);
+        }
+    }
+    
+    private static <T extends Comparable<T>> void sortByKey(int[] keys, Node<T>[] nodes, int count) {
+        // insertion sort, count is at most SMALL_EDGES
+        for (int i = 1; i < count; i++) {
+            int key = keys[i];
+            Node<T> node = nodes[i];
+            int j = i - 1;
+            for (; j >= 0 && keys[j] > key; j--) {
+                keys[j + 1] = keys[j];
+                nodes[j + 1] = nodes[j];
+            }
+            keys[j + 1] = key;
+            nodes[j + 1] = node;
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> Node<T>[] newNodes(int capacity) {
+        return (Node<T>[]) new Node<?>[capacity];
     }
 
     public void setState(int i){
@@ -125,7 +273,7 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
     public String toString() {
         String output = _data.toString() + " > ";
         boolean first = true;
-        for(Node<?> n : _edges.values()) {
+        for(Node<?> n : getEdges()) {
             if (!first) {
                 output += " ";
             }
@@ -150,31 +298,118 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
         return _data.compareTo(other._data);
     }
 
+    /**
+     * Removes the directed graph Edge linking this Node to the otherNode, if one exists.
+     * @param otherNode - reference to the Node at the other end of the Edge.
+     * @see Node#addEdge(Node)
+     */
     public void removeEdge(Node<T> otherNode) {
-        _edges.remove(otherNode._data.hashCode());
+        int pos = find(otherNode._data.hashCode());
+        if (pos < 0) {
+            return;
+        }
+        _edgeCount--;
+        if (!isHashed()) {
+            System.arraycopy(_edgeKeys, pos + 1, _edgeKeys, pos, _edgeCount - pos);
+            System.arraycopy(_edgeNodes, pos + 1, _edgeNodes, pos, _edgeCount - pos);
+            _edgeNodes[_edgeCount] = null;
+            return;
+        }
+        
+        // backward shift deletion: move up the entries displaced past the freed slot
+        int mask = _edgeKeys.length - 1;
+        _edgeNodes[pos] = null;
+        for (int slot = (pos + 1) & mask; _edgeNodes[slot] != null; slot = (slot + 1) & mask) {
+            int home = slotOf(_edgeKeys[slot], mask);
+            if (((slot - home) & mask) >= ((slot - pos) & mask)) {
+                _edgeKeys[pos] = _edgeKeys[slot];
+                _edgeNodes[pos] = _edgeNodes[slot];
+                _edgeNodes[slot] = null;
+                pos = slot;
+            }
+        }
+        if (_edgeCount <= SMALL_EDGES / 2) {
+            resize(SMALL_EDGES);
+        }
     }
     
+    /**
+     * Checks if there is a directed graph Edge linking this Node to the other Node.
+     * @param other - reference to the Node at the other end of the Edge.
+     * @return true if the Edge exists, false otherwise.
+     */
     public boolean hasEdge(Node<T> other){
-        Node<T> res = _edges.get(other._data.hashCode());
-        return (res == null ? false : true);
+        return find(other._data.hashCode()) >= 0;
     }
 
-    public Map<Integer, Node<T>> getEdges(){
-        return _edges;
+    /**
+     * Gets the number of outgoing (egress) Edges of this Node.
+     * @return the out-degree of this Node.
+     */
+    public int getEdgeCount() {
+        return _edgeCount;
+    }
+
+    /**
+     * Gets the neighbors of this Node, at the other end of its outgoing (egress) Edges.
+     * The returned collection is a read-only view over the Edges of this Node.
+     * @return collection of the neighboring Nodes.
+     */
+    public Collection<Node<T>> getEdges(){
+        return new AbstractCollection<Node<T>>() {
+            @Override
+            public Iterator<Node<T>> iterator() {
+                return new Iterator<Node<T>>() {
+                    private int _pos = advance(0);
+                    
+                    private int advance(int pos) {
+                        if (isHashed()) {
+                            while (pos < _edgeNodes.length && _edgeNodes[pos] == null) {
+                                pos++;
+                            }
+                            return pos;
+                        }
+                        return pos < _edgeCount ? pos : Integer.MAX_VALUE;
+                    }
+                    
+                    @Override
+                    public boolean hasNext() {
+                        return _edgeNodes != null && _pos < _edgeNodes.length;
+                    }
+                    
+                    @Override
+                    public Node<T> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Node<T> node = _edgeNodes[_pos];
+                        _pos = advance(_pos + 1);
+                        return node;
+                    }
+                };
+            }
+            
+            @Override
+            public int size() {
+                return _edgeCount;
+            }
+        };
     }
 
     public void removeAllEdges(){
-        _edges.clear();
+        _edgeKeys = null;
+        _edgeNodes = null;
+        _edgeCount = 0;
     }
 
 
 
     public boolean isUGraph(Set<Integer> parents){
-        for(Map.Entry<Integer, Node<T>> entry: _edges.entrySet()){
-            if(entry.getValue().hasEdge(this)){
+        for(Node<T> other: getEdges()){
+            if(other.hasEdge(this)){
                 if(!parents.contains(this.hashCode())){
                     parents.add(this.hashCode());
-                    return entry.getValue().isUGraph(parents);
+                    return other.isUGraph(parents);
                 }
             } else return false;
         }
@@ -187,7 +422,7 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
         }
         _state = 1;
         
-        for(Node<T> n: _edges.values()){
+        for(Node<T> n: getEdges()){
             n.checkConnected(this);
         }
     }
@@ -198,7 +433,7 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
         }
         _state = 1;
         
-        for(Node<T> node: _edges.values()){
+        for(Node<T> node: getEdges()){
             node.isConnected();
         }
     }
@@ -208,7 +443,7 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
             return true;
         }
         parents.add(this.hashCode());
-        for(Node<T> node: _edges.values()){
+        for(Node<T> node: getEdges()){
             return node.loops(parents);
             
         }
@@ -218,7 +453,7 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
     public Collection<Node<T>> topoSort(){
         Collection<Node<T>> updates = new HashSet<Node<T>>();
             
-        for(Node<T> node: _edges.values()){
+        for(Node<T> node: getEdges()){
             if(node.getState() <= _state){
                 node.setState(_state + 1);
                 updates.add(node);
@@ -234,7 +469,7 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
         }
         _state = state;
 
-        for(Node<T> n : _edges.values()){
+        for(Node<T> n : getEdges()){
             if(n.getState() != 0){
                 _state = n.getState();
                 return state;
@@ -248,7 +483,7 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
             return;
         }
         _state = state;
-        for(Node<T> n: _edges.values()){
+        for(Node<T> n: getEdges()){
             n.setDistances(state+1);
         }
     }
@@ -263,7 +498,7 @@ public class Node<T extends Comparable<T>> implements Comparable<Node<T>> {
 
     public Set<Node<T>> circuitHelper(Set<Node<T>> set){
         HashSet<Node<T>> s = new HashSet<Node<T>>();
-        for(Node<T> n : _edges.values()){
+        for(Node<T> n : getEdges()){
             if(!set.contains(n)){
                 s.add(n);
             }
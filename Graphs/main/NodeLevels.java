@@ -0,0 +1,153 @@
+package Graphs.main;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+/**
+ * Class definition for a primitive-backed grouping of the Nodes of a Graph by an
+ * integer level, such as their position in a topological sort or their degree.
+ * The level of each Node is kept in an array indexed by the Node id in the GraphStorage,
+ * and Node names are only resolved when asked for, such that consumers working on ids
+ * pay neither for String creation nor for sorting.
+ * <br>The TreeMap form returned by Graph.topoSort(), getOutDegrees() and getInDegrees()
+ * is produced on demand by toTreeMap().
+ * @see Graph#topoSortLevels()
+ * @see Graph#outDegreeLevels()
+ * @see Graph#inDegreeLevels()
+ */
+public class NodeLevels {
+    private GraphStorage _storage;
+    
+    /**
+     * The level of each Node, indexed by the Node id.
+     */
+    private int[] _levels;
+    
+    private int _levelCount;
+    
+    /**
+     * Node ids ordered by level: the Nodes at level <i>l</i> are found in _order between
+     * the positions _starts[l] (inclusive) and _starts[l+1]. Both are built on first use.
+     */
+    private int[] _order;
+    private int[] _starts;
+    
+    /**
+     * Constructs the grouping of the Nodes in a storage by the given levels.
+     * @param storage - the storage of the Graph.
+     * @param levels - the (non-negative) level of each Node, indexed by the Node id.
+     */
+    NodeLevels(GraphStorage storage, int[] levels) {
+        _storage = storage;
+        _levels = levels;
+        _levelCount = 0;
+        for (int level : levels) {
+            _levelCount = Math.max(_levelCount, level + 1);
+        }
+    }
+    
+    /**
+     * Gets the number of Nodes grouped by this object.
+     * @return the number of Nodes in the Graph.
+     */
+    public int size() {
+        return _levels.length;
+    }
+    
+    /**
+     * Gets the number of levels, one more than the highest level of any Node.
+     * @return the number of levels, 0 for an empty Graph.
+     */
+    public int getLevelCount() {
+        return _levelCount;
+    }
+    
+    /**
+     * Gets the level of a Node.
+     * @param id - the id of the Node, in the GraphStorage of the Graph.
+     * @return the level of the Node.
+     */
+    public int getLevel(int id) {
+        return _levels[id];
+    }
+    
+    /**
+     * Gets the name of a Node.
+     * @param id - the id of the Node, in the GraphStorage of the Graph.
+     * @return the name of the Node.
+     */
+    public String getName(int id) {
+        return _storage.getName(id);
+    }
+    
+    /**
+     * Gets the number of Nodes at a level.
+     * @param level - the level.
+     * @return the number of Nodes at that level, possibly 0.
+     */
+    public int getCount(int level) {
+        buildOrder();
+        return level < 0 || level >= _levelCount ? 0 : _starts[level + 1] - _starts[level];
+    }
+    
+    /**
+     * Streams the ids of the Nodes at a level, in increasing order, without copying them.
+     * @param level - the level.
+     * @return the ids of the Nodes at that level.
+     */
+    public IntStream getNodes(int level) {
+        buildOrder();
+        if (level < 0 || level >= _levelCount) {
+            return IntStream.empty();
+        }
+        return Arrays.stream(_order, _starts[level], _starts[level + 1]);
+    }
+    
+    /**
+     * Builds the TreeMap form of this grouping, resolving the name of every Node.
+     * @return map of each level to the names of the Nodes at that level; levels
+     * without any Node are not in the map.
+     */
+    public TreeMap<Integer, TreeSet<String>> toTreeMap() {
+        TreeMap<Integer, TreeSet<String>> map = new TreeMap<Integer, TreeSet<String>>();
+        for (int id = 0; id < _levels.length; id++) {
+            TreeSet<String> names = map.get(_levels[id]);
+            if (names == null) {
+                names = new TreeSet<String>();
+                map.put(_levels[id], names);
+            }
+            names.add(_storage.getName(id));
+        }
+        return map;
+    }
+    
+    @Override
+    public String toString() {
+        return toTreeMap().toString();
+    }
+    
+    /**
+     * Groups the Node ids by level with a counting sort, the first time they are needed.
+     */
+    private synchronized void buildOrder() {
+        if (_order != null) {
+            return;
+        }
+        int[] starts = new int[_levelCount + 1];
+        for (int level : _levels) {
+            starts[level + 1]++;
+        }
+        for (int level = 0; level < _levelCount; level++) {
+            starts[level + 1] += starts[level];
+        }
+        int[] order = new int[_levels.length];
+        int[] fill = Arrays.copyOf(starts, _levelCount);
+        for (int id = 0; id < _levels.length; id++) {
+            order[fill[_levels[id]]++] = id;
+        }
+        _starts = starts;
+        _order = order;
+    }
+}
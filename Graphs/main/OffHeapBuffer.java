@@ -0,0 +1,107 @@
+package Graphs.main;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Class definition for a growable block of memory allocated outside of the Java heap.
+ * The memory is split in direct ByteBuffer chunks of up to 1GB each, such that the
+ * block is not limited to the 2GB addressable by a single ByteBuffer. Values are
+ * addressed by their byte position and are expected to be aligned to their size,
+ * so that no value ever straddles two chunks.
+ * <br>The memory is released when the buffer is garbage collected. The buffer itself
+ * is a handful of references on the heap, regardless of its size.
+ * <br>The direct memory of the JVM is bounded by the -XX:MaxDirectMemorySize option,
+ * which defaults to the maximum heap size (-Xmx). Buffers larger than the heap thus need
+ * the option, e.g. -XX:MaxDirectMemorySize=32g, else their allocation fails with an
+ * OutOfMemoryError naming it.
+ * @see OffHeapStorage
+ */
+class OffHeapBuffer {
+    private static final int CHUNK_BITS = 30;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    
+    private ByteBuffer[] _chunks;
+    private long _capacity;
+    
+    /**
+     * Constructs a new buffer able to hold at least <i>bytes</i> bytes, initially zero.
+     * @param bytes - the initial capacity of the buffer.
+     */
+    OffHeapBuffer(long bytes) {
+        _chunks = new ByteBuffer[0];
+        _capacity = 0;
+        ensureCapacity(Math.max(bytes, 8));
+    }
+    
+    /**
+     * Gets the capacity of the buffer.
+     * @return number of bytes the buffer can hold.
+     */
+    long capacity() {
+        return _capacity;
+    }
+    
+    /**
+     * Grows the buffer, if needed, such that it can hold at least <i>bytes</i> bytes.
+     * The content of the buffer is preserved. The last chunk grows by doubling until it
+     * reaches the chunk size, after which new chunks are added without copying.
+     * @param bytes - the required capacity of the buffer.
+     */
+    void ensureCapacity(long bytes) {
+        while (_capacity < bytes) {
+            int last = _chunks.length - 1;
+            if (last >= 0 && _chunks[last].capacity() < CHUNK_SIZE) {
+                long needed = bytes - ((long) last << CHUNK_BITS);
+                int size = (int) Math.min(CHUNK_SIZE, Math.max(needed, 2L * _chunks[last].capacity()));
+                ByteBuffer chunk = allocate(size);
+                chunk.put(0, _chunks[last], 0, _chunks[last].capacity());
+                _chunks[last] = chunk;
+            } else {
+                ByteBuffer[] chunks = new ByteBuffer[_chunks.length + 1];
+                System.arraycopy(_chunks, 0, chunks, 0, _chunks.length);
+                long needed = bytes - ((long) _chunks.length << CHUNK_BITS);
+                chunks[_chunks.length] = allocate((int) Math.min(CHUNK_SIZE, Math.max(needed, 8)));
+                _chunks = chunks;
+            }
+            _capacity = ((long) (_chunks.length - 1) << CHUNK_BITS) + _chunks[_chunks.length - 1].capacity();
+        }
+    }
+    
+    private static ByteBuffer allocate(int size) {
+        try {
+            // round up to a multiple of 8 bytes, keeping all the values aligned
+            return ByteBuffer.allocateDirect((size + 7) & ~7).order(ByteOrder.nativeOrder());
+        } catch (OutOfMemoryError e) {
+            OutOfMemoryError error = new OutOfMemoryError("Cannot allocate " + size
+                    + " more bytes off-heap: raise the direct memory limit with -XX:MaxDirectMemorySize!");
+            error.initCause(e);
+            throw error;
+        }
+    }
+    
+    byte getByte(long pos) {
+        return _chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+    }
+    
+    void putByte(long pos, byte value) {
+        _chunks[(int) (pos >>> CHUNK_BITS)].put((int) (pos & CHUNK_MASK), value);
+    }
+    
+    int getInt(long pos) {
+        return _chunks[(int) (pos >>> CHUNK_BITS)].getInt((int) (pos & CHUNK_MASK));
+    }
+    
+    void putInt(long pos, int value) {
+        _chunks[(int) (pos >>> CHUNK_BITS)].putInt((int) (pos & CHUNK_MASK), value);
+    }
+    
+    long getLong(long pos) {
+        return _chunks[(int) (pos >>> CHUNK_BITS)].getLong((int) (pos & CHUNK_MASK));
+    }
+    
+    void putLong(long pos, long value) {
+        _chunks[(int) (pos >>> CHUNK_BITS)].putLong((int) (pos & CHUNK_MASK), value);
+    }
+}
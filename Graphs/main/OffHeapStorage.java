@@ -0,0 +1,273 @@
+package Graphs.main;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class definition for a GraphStorage keeping all of its data outside of the Java heap.
+ * The adjacency is stored as compressed sparse rows in both directions (an offset per
+ * Node into an array of neighbor ids), along with the UTF-8 encoded Node names and an
+ * open addressing table mapping the names back to the Node ids. All of these live in
+ * OffHeapBuffer blocks, such that the heap only holds a few handles regardless of the
+ * size of the Graph, and the garbage collector never has to trace its structure.
+ * <br>The off-heap memory is bounded by the JVM option -XX:MaxDirectMemorySize, which
+ * defaults to the maximum heap size (-Xmx): a Graph larger than the heap needs the JVM
+ * to be started with e.g. -XX:MaxDirectMemorySize=32g.
+ * <br>E.g.:<pre>
+ * OffHeapStorage.Builder builder = new OffHeapStorage.Builder();
+ * int a = builder.addNode("A");
+ * int b = builder.addNode("B");
+ * builder.addEdge(a, b);
+ * Graph&lt;String&gt; g = Graph.fromStorage(builder.build());</pre>
+ * @see GraphStorage
+ * @see Graph#fromStorage(GraphStorage)
+ */
+public class OffHeapStorage implements GraphStorage {
+    private int _size;
+    private long _edgeCount;
+    
+    // (size + 1) longs: start of the outgoing neighbors of each Node in _outTargets
+    private OffHeapBuffer _outOffsets;
+    // edgeCount ints: ids of the outgoing neighbors, grouped by Node
+    private OffHeapBuffer _outTargets;
+    // (size + 1) longs: start of the incoming neighbors of each Node in _inSources
+    private OffHeapBuffer _inOffsets;
+    // edgeCount ints: ids of the incoming neighbors, grouped by Node
+    private OffHeapBuffer _inSources;
+    // (size + 1) longs: start of the name of each Node in _names
+    private OffHeapBuffer _nameOffsets;
+    // UTF-8 bytes of all the Node names
+    private OffHeapBuffer _names;
+    // power of 2 ints: (id + 1) of the Node hashed in each slot, 0 for empty slots
+    private OffHeapBuffer _lookup;
+    private int _lookupMask;
+    
+    /**
+     * Class definition for an incremental builder of an OffHeapStorage. Nodes and Edges
+     * are appended to off-heap buffers as they are added, and the adjacency is laid out
+     * in its final form when the storage is built. A builder builds a single storage:
+     * its Edge buffers are released once the storage is built.
+     */
+    public static class Builder {
+        private int _size = 0;
+        private long _edgeCount = 0;
+        private long _namesLength = 0;
+        private OffHeapBuffer _nameOffsets = new OffHeapBuffer(1024);
+        private OffHeapBuffer _names = new OffHeapBuffer(1024);
+        private OffHeapBuffer _sources = new OffHeapBuffer(1024);
+        private OffHeapBuffer _targets = new OffHeapBuffer(1024);
+        
+        /**
+         * Adds a new Node to the storage being built.
+         * @param name - the name of the Node, expected to be unique.
+         * @return the id of the new Node.
+         */
+        public int addNode(String name) {
+            checkNotBuilt();
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            _nameOffsets.ensureCapacity(8L * (_size + 2));
+            _names.ensureCapacity(_namesLength + bytes.length);
+            _nameOffsets.putLong(8L * _size, _namesLength);
+            for (byte b : bytes) {
+                _names.putByte(_namesLength++, b);
+            }
+            return _size++;
+        }
+        
+        /**
+         * Adds a new directed Edge to the storage being built. The Edges are expected
+         * to be unique, adding the same Edge twice results in a duplicated Edge.
+         * @param from - id of the Node where the Edge is starting.
+         * @param to - id of the Node where the Edge is ending.
+         * @throws RuntimeException if either of the two Nodes was not added.
+         */
+        public void addEdge(int from, int to) {
+            checkNotBuilt();
+            if (from < 0 || from >= _size || to < 0 || to >= _size) {
+                throw new RuntimeException("Node(s) not in the graph!");
+            }
+            _sources.ensureCapacity(4 * (_edgeCount + 1));
+            _targets.ensureCapacity(4 * (_edgeCount + 1));
+            _sources.putInt(4 * _edgeCount, from);
+            _targets.putInt(4 * _edgeCount, to);
+            _edgeCount++;
+        }
+        
+        /**
+         * Builds the storage out of the Nodes and Edges added so far.
+         * @return the new OffHeapStorage.
+         * @throws RuntimeException if two Nodes were added with the same name.
+         */
+        public OffHeapStorage build() {
+            checkNotBuilt();
+            _nameOffsets.putLong(8L * _size, _namesLength);
+            OffHeapStorage storage = new OffHeapStorage();
+            storage._size = _size;
+            storage._edgeCount = _edgeCount;
+            storage._nameOffsets = _nameOffsets;
+            storage._names = _names;
+            storage._outOffsets = new OffHeapBuffer(8L * (_size + 1));
+            storage._outTargets = new OffHeapBuffer(4 * _edgeCount);
+            storage._inOffsets = new OffHeapBuffer(8L * (_size + 1));
+            storage._inSources = new OffHeapBuffer(4 * _edgeCount);
+            scatter(_sources, _targets, storage._outOffsets, storage._outTargets);
+            scatter(_targets, _sources, storage._inOffsets, storage._inSources);
+            // the names now belong to the storage, and the Edges are laid out in its rows
+            _nameOffsets = null;
+            _names = null;
+            _sources = null;
+            _targets = null;
+            storage.buildLookup();
+            return storage;
+        }
+        
+        private void checkNotBuilt() {
+            if (_sources == null) {
+                throw new RuntimeException("Storage already built!");
+            }
+        }
+        
+        /**
+         * Lays out the Edges as compressed sparse rows, grouped by their <i>keys</i> endpoint.
+         * The offsets are first used to count the degree of each Node, then turned into
+         * the start of each row and finally advanced as the row is filled.
+         */
+        private void scatter(OffHeapBuffer keys, OffHeapBuffer values, OffHeapBuffer offsets, OffHeapBuffer rows) {
+            for (long e = 0; e < _edgeCount; e++) {
+                long pos = 8L * (keys.getInt(4 * e) + 1);
+                offsets.putLong(pos, offsets.getLong(pos) + 1);
+            }
+            for (int id = 0; id < _size; id++) {
+                offsets.putLong(8L * (id + 1), offsets.getLong(8L * (id + 1)) + offsets.getLong(8L * id));
+            }
+            for (long e = 0; e < _edgeCount; e++) {
+                long pos = 8L * keys.getInt(4 * e);
+                long row = offsets.getLong(pos);
+                rows.putInt(4 * row, values.getInt(4 * e));
+                offsets.putLong(pos, row + 1);
+            }
+            // each offset now holds the end of its row, shift them back to the row starts
+            for (int id = _size; id > 0; id--) {
+                offsets.putLong(8L * id, offsets.getLong(8L * (id - 1)));
+            }
+            offsets.putLong(0, 0);
+        }
+    }
+    
+    /**
+     * Copies the content of any GraphStorage (e.g. the one of a heap based Graph)
+     * into a new OffHeapStorage. The Node ids are preserved.
+     * @param storage - the storage to be copied.
+     * @return the new OffHeapStorage.
+     */
+    public static OffHeapStorage copyOf(GraphStorage storage) {
+        Builder builder = new Builder();
+        for (int id = 0; id < storage.size(); id++) {
+            builder.addNode(storage.getName(id));
+        }
+        for (int id = 0; id < storage.size(); id++) {
+            for (int i = 0; i < storage.outDegree(id); i++) {
+                builder.addEdge(id, storage.outNeighbor(id, i));
+            }
+        }
+        return builder.build();
+    }
+    
+    private OffHeapStorage() {
+    }
+    
+    private void buildLookup() {
+        int slots = Integer.highestOneBit(Math.max(2, _size) * 2 - 1) << 1;
+        _lookup = new OffHeapBuffer(4L * slots);
+        _lookupMask = slots - 1;
+        for (int id = 0; id < _size; id++) {
+            byte[] name = nameBytes(id);
+            int slot = slotOf(name);
+            while (_lookup.getInt(4L * slot) != 0) {
+                if (sameName(_lookup.getInt(4L * slot) - 1, name)) {
+                    throw new RuntimeException("Ambiguous graph!");
+                }
+                slot = (slot + 1) & _lookupMask;
+            }
+            _lookup.putInt(4L * slot, id + 1);
+        }
+    }
+    
+    private int slotOf(byte[] name) {
+        int hash = 0;
+        for (byte b : name) {
+            hash = 31 * hash + b;
+        }
+        // spread the higher bits into the slot index
+        hash ^= hash >>> 16;
+        return (hash * 0x9E3779B9) & _lookupMask;
+    }
+    
+    private byte[] nameBytes(int id) {
+        long start = _nameOffsets.getLong(8L * id);
+        byte[] bytes = new byte[(int) (_nameOffsets.getLong(8L * (id + 1)) - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = _names.getByte(start + i);
+        }
+        return bytes;
+    }
+    
+    private boolean sameName(int id, byte[] name) {
+        long start = _nameOffsets.getLong(8L * id);
+        if (_nameOffsets.getLong(8L * (id + 1)) - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (_names.getByte(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public int size() {
+        return _size;
+    }
+    
+    @Override
+    public long edgeCount() {
+        return _edgeCount;
+    }
+    
+    @Override
+    public String getName(int id) {
+        return new String(nameBytes(id), StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public int indexOf(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        for (int slot = slotOf(bytes); _lookup.getInt(4L * slot) != 0; slot = (slot + 1) & _lookupMask) {
+            int id = _lookup.getInt(4L * slot) - 1;
+            if (sameName(id, bytes)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public int outDegree(int id) {
+        return (int) (_outOffsets.getLong(8L * (id + 1)) - _outOffsets.getLong(8L * id));
+    }
+    
+    @Override
+    public int outNeighbor(int id, int i) {
+        return _outTargets.getInt(4 * (_outOffsets.getLong(8L * id) + i));
+    }
+    
+    @Override
+    public int inDegree(int id) {
+        return (int) (_inOffsets.getLong(8L * (id + 1)) - _inOffsets.getLong(8L * id));
+    }
+    
+    @Override
+    public int inNeighbor(int id, int i) {
+        return _inSources.getInt(4 * (_inOffsets.getLong(8L * id) + i));
+    }
+}
@@ -0,0 +1,60 @@
+package Graphs.main;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class definition for a path in a Graph, as a sequence of Nodes (given by their data)
+ * where each Node is linked to the next one by an Edge. The cost of the path is the
+ * number of Edges it follows.
+ * @param <T> - reference type of the Nodes in the Graph.
+ * @see Graph#shortestPath(Comparable, Comparable)
+ */
+public class Path<T extends Comparable<T>> {
+    private List<T> _nodes;
+    private int _cost;
+    
+    /**
+     * Constructs a new Path going through the given Nodes.
+     * @param nodes - data of the Nodes on the path, from source to destination.
+     */
+    public Path(List<T> nodes) {
+        _nodes = Collections.unmodifiableList(nodes);
+        _cost = nodes.size() - 1;
+    }
+    
+    /**
+     * Gets the Nodes on this Path, in order, from the source to the destination.
+     * @return the data of the Nodes on the path.
+     */
+    public List<T> getNodes() {
+        return _nodes;
+    }
+    
+    /**
+     * Gets the cost of this Path, as the number of Edges it follows.
+     * @return the number of Edges on the path.
+     */
+    public int getCost() {
+        return _cost;
+    }
+    
+    /**
+     * Gives a String representation of this Path as a sequence of Nodes separated
+     * by the ' > ' token, e.g.: <pre>"A > G > D"</pre>
+     * @return String reflecting the Nodes on this Path.
+     */
+    @Override
+    public String toString() {
+        String output = "";
+        boolean first = true;
+        for (T data : _nodes) {
+            if (!first) {
+                output += " > ";
+            }
+            output += data.toString();
+            first = false;
+        }
+        return output;
+    }
+}
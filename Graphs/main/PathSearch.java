@@ -0,0 +1,175 @@
+package Graphs.main;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleBiFunction;
+
+/**
+ * Class implementing a point-to-point shortest path query over a GraphStorage.
+ * The search is bidirectional: a forward search grows from the source over the
+ * outgoing (egress) Edges while a reverse search grows from the destination over the
+ * incoming (ingress) Edges, and it stops as soon as the two frontiers prove no shorter
+ * path can exist. An optional A* heuristic steers both searches towards each other
+ * through the average of the forward and reverse potentials.
+ * <br>Only the Nodes reached by either frontier are ever touched, all the per-Node
+ * labels are kept in maps sized to the explored part of the Graph.
+ * @param <T> - reference type of the Nodes in the Graph.
+ * @see Graph#shortestPath(Comparable, Comparable, ToDoubleBiFunction)
+ */
+class PathSearch<T extends Comparable<T>> {
+    /**
+     * Entry in the priority queue of one of the searches. Entries are never
+     * updated in place, an entry is stale if its distance is greater than the
+     * best distance known for its Node.
+     */
+    private static class Label implements Comparable<Label> {
+        private int _id;
+        private int _distance;
+        private double _key;
+        
+        private Label(int id, int distance, double key) {
+            _id = id;
+            _distance = distance;
+            _key = key;
+        }
+        
+        @Override
+        public int compareTo(Label other) {
+            return Double.compare(_key, other._key);
+        }
+    }
+    
+    private GraphStorage _storage;
+    private IntFunction<T> _data;
+    private T _from;
+    private T _to;
+    private ToDoubleBiFunction<T, T> _heuristic;
+    
+    private Map<Integer, Integer> _distF = new HashMap<Integer, Integer>();
+    private Map<Integer, Integer> _distR = new HashMap<Integer, Integer>();
+    private Map<Integer, Integer> _parentF = new HashMap<Integer, Integer>();
+    private Map<Integer, Integer> _parentR = new HashMap<Integer, Integer>();
+    private PriorityQueue<Label> _queueF = new PriorityQueue<Label>();
+    private PriorityQueue<Label> _queueR = new PriorityQueue<Label>();
+    
+    /**
+     * Best source to destination distance found so far and the Node
+     * where the two searches met on that path.
+     */
+    private int _best = Integer.MAX_VALUE;
+    private int _meet = -1;
+    
+    /**
+     * Constructs a new search over the given storage.
+     * @param storage - the storage of the Graph.
+     * @param data - resolves the id of a Node to its data.
+     * @param heuristic - estimate of the distance between two Nodes, or null for none.
+     */
+    PathSearch(GraphStorage storage, IntFunction<T> data, ToDoubleBiFunction<T, T> heuristic) {
+        _storage = storage;
+        _data = data;
+        _heuristic = heuristic;
+    }
+    
+    /**
+     * Finds a shortest path between two Nodes.
+     * @param source - id of the Node where the path starts.
+     * @param target - id of the Node where the path ends.
+     * @return the shortest path, or null if <i>target</i> cannot be reached from <i>source</i>.
+     */
+    Path<T> find(int source, int target) {
+        _from = _data.apply(source);
+        _to = _data.apply(target);
+        _distF.put(source, 0);
+        _distR.put(target, 0);
+        _queueF.add(new Label(source, 0, potential(source)));
+        _queueR.add(new Label(target, 0, -potential(target)));
+        if (source == target) {
+            _best = 0;
+            _meet = source;
+        }
+        
+        while (true) {
+            Label topF = top(_queueF, _distF);
+            Label topR = top(_queueR, _distR);
+            if (topF == null || topR == null || topF._key + topR._key >= _best) {
+                break;
+            }
+            
+            // expand the smaller frontier, keeping the two searches balanced
+            if (_queueF.size() <= _queueR.size()) {
+                _queueF.remove();
+                expand(topF, true);
+            } else {
+                _queueR.remove();
+                expand(topR, false);
+            }
+        }
+        
+        return _meet < 0 ? null : buildPath();
+    }
+    
+    /**
+     * Average potential of a Node: the forward search uses it as is, the reverse
+     * search uses its negated value. Averaging the two estimates keeps the reduced
+     * Edge costs consistent in both directions.
+     */
+    private double potential(int id) {
+        if (_heuristic == null) {
+            return 0;
+        }
+        T data = _data.apply(id);
+        return (_heuristic.applyAsDouble(data, _to) - _heuristic.applyAsDouble(_from, data)) / 2;
+    }
+    
+    /**
+     * Drops the stale entries from the top of a queue.
+     * @return the top (non-stale) entry of the queue, or null if the queue is empty.
+     */
+    private Label top(PriorityQueue<Label> queue, Map<Integer, Integer> dist) {
+        while (!queue.isEmpty() && queue.peek()._distance > dist.get(queue.peek()._id)) {
+            queue.remove();
+        }
+        return queue.peek();
+    }
+    
+    private void expand(Label label, boolean forward) {
+        Map<Integer, Integer> dist = forward ? _distF : _distR;
+        Map<Integer, Integer> parent = forward ? _parentF : _parentR;
+        Map<Integer, Integer> otherDist = forward ? _distR : _distF;
+        PriorityQueue<Label> queue = forward ? _queueF : _queueR;
+        int u = label._id;
+        int degree = forward ? _storage.outDegree(u) : _storage.inDegree(u);
+        int distance = label._distance + 1;
+        for (int i = 0; i < degree; i++) {
+            int v = forward ? _storage.outNeighbor(u, i) : _storage.inNeighbor(u, i);
+            Integer known = dist.get(v);
+            if (known != null && known <= distance) {
+                continue;
+            }
+            dist.put(v, distance);
+            parent.put(v, u);
+            queue.add(new Label(v, distance, distance + (forward ? potential(v) : -potential(v))));
+            
+            Integer remaining = otherDist.get(v);
+            if (remaining != null && distance + remaining < _best) {
+                _best = distance + remaining;
+                _meet = v;
+            }
+        }
+    }
+    
+    private Path<T> buildPath() {
+        LinkedList<T> nodes = new LinkedList<T>();
+        for (Integer id = _meet; id != null; id = _parentF.get(id)) {
+            nodes.addFirst(_data.apply(id));
+        }
+        for (Integer id = _parentR.get(_meet); id != null; id = _parentR.get(id)) {
+            nodes.addLast(_data.apply(id));
+        }
+        return new Path<T>(nodes);
+    }
+}
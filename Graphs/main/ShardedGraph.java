@@ -0,0 +1,177 @@
+package Graphs.main;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Class definition for a Graph split into shards, one per partition (weakly connected
+ * component). As no Edge crosses two partitions, each shard is a Graph of its own and the
+ * structural queries run on all the shards in parallel before their results are merged.
+ * The shards can also be exported separately, e.g. to be served by several processes.
+ * <br>E.g.: <pre>g.shard().isDAGraph()</pre>
+ * The sharded view is a snapshot and is not affected by later changes of the Graph.
+ * @see Graph#shard()
+ * @see GraphShard
+ */
+public class ShardedGraph {
+    private GraphStorage _storage;
+    private int[] _partitions;
+    private List<GraphShard> _shards;
+    private List<Graph<String>> _graphs;
+    
+    /**
+     * Splits the given storage into shards.
+     * @param storage - the storage of the Graph.
+     * @param partitions - the partition of each Node, indexed by the Node id.
+     * @param count - the number of partitions.
+     */
+    ShardedGraph(GraphStorage storage, int[] partitions, int count) {
+        _storage = storage;
+        _partitions = partitions;
+        
+        // group the Node ids by partition, keeping the storage order within each partition
+        int[] sizes = new int[count];
+        for (int partition : partitions) {
+            sizes[partition]++;
+        }
+        int[][] members = new int[count][];
+        for (int partition = 0; partition < count; partition++) {
+            members[partition] = new int[sizes[partition]];
+        }
+        int[] localIds = new int[storage.size()];
+        Arrays.fill(sizes, 0);
+        for (int id = 0; id < storage.size(); id++) {
+            localIds[id] = sizes[partitions[id]]++;
+            members[partitions[id]][localIds[id]] = id;
+        }
+        
+        GraphShard[] shards = new GraphShard[count];
+        Arrays.parallelSetAll(shards, partition -> new GraphShard(storage, partition, members[partition], localIds));
+        _shards = Collections.unmodifiableList(Arrays.asList(shards));
+        _graphs = new ArrayList<Graph<String>>(count);
+        for (GraphShard shard : shards) {
+            _graphs.add(Graph.fromStorage(shard));
+        }
+    }
+    
+    /**
+     * Gets the number of shards.
+     * @return the number of partitions of the Graph.
+     */
+    public int size() {
+        return _shards.size();
+    }
+    
+    /**
+     * Gets the shards, indexed by partition.
+     * @return the unmodifiable list of shards.
+     */
+    public List<GraphShard> getShards() {
+        return _shards;
+    }
+    
+    /**
+     * Gets the shard holding the given Node.
+     * @param name - the name of the Node.
+     * @return the shard of the Node's partition.
+     * @throws RuntimeException if the Node is not present in the Graph.
+     */
+    public GraphShard getShard(String name) {
+        int id = _storage.indexOf(name);
+        if (id < 0) {
+            throw new RuntimeException("Node(s) not in the graph!");
+        }
+        return _shards.get(_partitions[id]);
+    }
+    
+    /**
+     * Gets a shard as a read-only Graph, caching its own query results.
+     * @param shard - the index of the shard.
+     * @return the Graph of the shard.
+     */
+    public Graph<String> getGraph(int shard) {
+        return _graphs.get(shard);
+    }
+    
+    /**
+     * Checks if the Graph is connected: it must consist of a single shard,
+     * itself connected.
+     * @return true if the Graph is connected, false otherwise.
+     */
+    public boolean isConnected() {
+        return _graphs.size() <= 1 && _graphs.stream().allMatch(Graph::isConnected);
+    }
+    
+    /**
+     * Checks if the Graph is Directed Acyclic graph, checking all the shards in parallel.
+     * @return true if all the shards are Directed Acyclic, false otherwise.
+     */
+    public boolean isDAGraph() {
+        return _graphs.parallelStream().allMatch(Graph::isDAGraph);
+    }
+    
+    /**
+     * Sorts the Nodes of the DAG topologically, sorting all the shards in parallel.
+     * As the position of a Node is the length of the longest path leading to it,
+     * which never leaves its shard, the merged result is the same as Graph.topoSort().
+     * @return map of each position in the sort to the names of the Nodes at that position,
+     * or null if the Graph is not a DAG.
+     */
+    public TreeMap<Integer, TreeSet<String>> topoSort() {
+        if (!isDAGraph()) {
+            return null;
+        }
+        List<NodeLevels> sorts = _graphs.parallelStream().map(Graph::topoSortLevels).toList();
+        TreeMap<Integer, TreeSet<String>> map = new TreeMap<Integer, TreeSet<String>>();
+        for (NodeLevels levels : sorts) {
+            for (int id = 0; id < levels.size(); id++) {
+                map.computeIfAbsent(levels.getLevel(id), level -> new TreeSet<String>()).add(levels.getName(id));
+            }
+        }
+        return map;
+    }
+    
+    /**
+     * Computes the Dijkstra distances from a source Node to all the Nodes in the Graph.
+     * Only the shard of the source is traversed, the Nodes of all the other shards
+     * being unreachable.
+     * @param string - the name of the source Node.
+     * @return map of each Node name to its distance from the source, or -1 if the
+     * Node cannot be reached from the source.
+     * @throws RuntimeException if the source Node is not present in the Graph.
+     */
+    public TreeMap<String, Integer> dijkstra(String string) {
+        GraphShard shard = getShard(string);
+        int[] distance = Graph.distances(shard, shard.toLocal(_storage.indexOf(string)));
+        
+        TreeMap<String, Integer> map = new TreeMap<String, Integer>();
+        for (int id = 0; id < _storage.size(); id++) {
+            map.put(_storage.getName(id), _partitions[id] == shard.getIndex() ? distance[shard.toLocal(id)] : -1);
+        }
+        return map;
+    }
+    
+    /**
+     * Exports each shard to its own file, named "shard-&lt;index&gt;.txt", in the
+     * format read by GraphServer.main().
+     * @param directory - the directory receiving the shard files.
+     * @throws IOException if a file cannot be written.
+     * @see GraphShard#export(Writer)
+     */
+    public void export(java.nio.file.Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (GraphShard shard : _shards) {
+            try (Writer out = Files.newBufferedWriter(directory.resolve("shard-" + shard.getIndex() + ".txt"), StandardCharsets.UTF_8)) {
+                shard.export(out);
+            }
+        }
+    }
+}
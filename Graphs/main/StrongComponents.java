@@ -0,0 +1,87 @@
+package Graphs.main;
+
+import java.util.Arrays;
+
+/**
+ * Class implementing Tarjan's algorithm for finding the strongly connected components
+ * of a Graph, given by its GraphStorage. A strongly connected component is a maximal set
+ * of Nodes where each Node can be reached from every other Node in the set.
+ * <br>The depth-first search is driven by an explicit stack rather than by recursion,
+ * such that arbitrarily deep Graphs can be processed, and runs in O(V+E).
+ * @see Graph#stronglyConnectedComponents()
+ * @see Graph#condensation()
+ */
+class StrongComponents {
+    
+    /**
+     * Finds the strongly connected components of the Graph.
+     * The components are numbered in topological order: if there is an Edge
+     * from a Node in component <i>a</i> to a Node in component <i>b</i>, with a != b,
+     * then a &lt; b.
+     * @param storage - the GraphStorage of the Graph.
+     * @return the component of each Node, indexed by the Node id.
+     */
+    static int[] find(GraphStorage storage) {
+        int n = storage.size();
+        int[] order = new int[n];       // discovery order of each Node, -1 if not visited
+        int[] low = new int[n];         // lowest discovery order reachable from the Node
+        int[] next = new int[n];        // position of the next Edge to follow from the Node
+        int[] component = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];       // Nodes not yet assigned to a component
+        int[] path = new int[n];        // Nodes on the current depth-first path
+        int stackTop = 0;
+        int pathTop = 0;
+        int visited = 0;
+        int found = 0;
+        Arrays.fill(order, -1);
+        
+        for (int root = 0; root < n; root++) {
+            if (order[root] >= 0) {
+                continue;
+            }
+            order[root] = low[root] = visited++;
+            stack[stackTop++] = root;
+            onStack[root] = true;
+            path[pathTop++] = root;
+            
+            while (pathTop > 0) {
+                int v = path[pathTop - 1];
+                if (next[v] < storage.outDegree(v)) {
+                    int w = storage.outNeighbor(v, next[v]++);
+                    if (order[w] < 0) {
+                        order[w] = low[w] = visited++;
+                        stack[stackTop++] = w;
+                        onStack[w] = true;
+                        path[pathTop++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                    continue;
+                }
+                
+                // all the Edges of v were followed, backtrack
+                pathTop--;
+                if (pathTop > 0) {
+                    int u = path[pathTop - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+                if (low[v] == order[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackTop];
+                        onStack[w] = false;
+                        component[w] = found;
+                    } while (w != v);
+                    found++;
+                }
+            }
+        }
+        
+        // Tarjan completes the components in reverse topological order
+        for (int i = 0; i < n; i++) {
+            component[i] = found - 1 - component[i];
+        }
+        return component;
+    }
+}
@@ -0,0 +1,233 @@
+package Graphs.main;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Class definition for a filtered view over a GraphStorage, keeping only the Nodes and
+ * Edges accepted by the given predicates (or bitmask), e.g. "only the Edges active today".
+ * The view is itself a GraphStorage, such that all the structural queries run on it
+ * directly, and the underlying storage is not copied up front:
+ * <ul>
+ * <li>creating a view costs O(1);</li>
+ * <li>the first query ranks the accepted Nodes, one int per Node of the underlying storage,
+ * to give them the dense ids [0, size() - 1] (skipped when all the Nodes are accepted);</li>
+ * <li>the Edges of a Node are filtered the first time they are visited, and the ids of its
+ * accepted neighbors are kept, such that the predicates run once per Edge and direction,
+ * and the later queries on that Node cost O(1), whatever the order of the visits.</li>
+ * </ul>
+ * <br>E.g.:<pre>
+ * Graph&lt;String&gt; today = Graph.fromStorage(new SubgraphView(g.getStorage(), (from, to) -&gt; active[from][to]));
+ * today.isConnected();</pre>
+ * @see Graph#subgraph(java.util.function.Predicate, java.util.function.BiPredicate)
+ */
+public class SubgraphView implements GraphStorage {
+
+    /**
+     * Interface definition for a predicate over the Edges of a GraphStorage.
+     */
+    @FunctionalInterface
+    public interface EdgePredicate {
+        /**
+         * Tests an Edge.
+         * @param from - id of the Node the Edge starts from, in the underlying storage.
+         * @param to - id of the Node the Edge ends at, in the underlying storage.
+         * @return true if the Edge is part of the view.
+         */
+        boolean test(int from, int to);
+    }
+
+    private GraphStorage _parent;
+    private IntPredicate _nodes;
+    private EdgePredicate _edges;
+
+    // ids in the underlying storage of the accepted Nodes, ranked on first use
+    private int[] _ids;
+    // id in the view of each Node of the underlying storage, -1 if not accepted
+    private volatile int[] _ranks;
+    private volatile long _edgeCount = -1;
+    // ids in the view of the accepted out and in neighbors of each Node, filtered on first visit
+    private volatile AtomicReferenceArray<int[]> _outRows;
+    private volatile AtomicReferenceArray<int[]> _inRows;
+
+    /**
+     * Constructs a view of the Nodes and Edges accepted by the given predicates.
+     * An Edge is part of the view only if both its Nodes are.
+     * @param parent - the underlying storage.
+     * @param nodes - accepts the ids of the Nodes in the view, or null to keep all the Nodes.
+     * @param edges - accepts the Edges in the view, or null to keep all the Edges between kept Nodes.
+     */
+    public SubgraphView(GraphStorage parent, IntPredicate nodes, EdgePredicate edges) {
+        _parent = parent;
+        _nodes = nodes;
+        _edges = edges;
+    }
+
+    /**
+     * Constructs a view of all the Nodes, and the Edges accepted by the given predicate.
+     * @param parent - the underlying storage.
+     * @param edges - accepts the Edges in the view.
+     */
+    public SubgraphView(GraphStorage parent, EdgePredicate edges) {
+        this(parent, (IntPredicate) null, edges);
+    }
+
+    /**
+     * Constructs a view of the Nodes set in the given bitmask.
+     * @param parent - the underlying storage.
+     * @param nodes - the ids of the Nodes in the view. The bitmask is not copied
+     * and must not change while the view is in use.
+     * @param edges - accepts the Edges in the view, or null to keep all the Edges between kept Nodes.
+     */
+    public SubgraphView(GraphStorage parent, BitSet nodes, EdgePredicate edges) {
+        this(parent, nodes::get, edges);
+    }
+
+    /**
+     * Gets the id in the underlying storage of a Node of this view.
+     * @param id - the id of the Node in the view.
+     * @return the id of the Node in the underlying storage.
+     */
+    public int toParent(int id) {
+        return _nodes == null ? id : ids()[id];
+    }
+
+    private int[] ranks() {
+        int[] ranks = _ranks;
+        if (ranks == null) {
+            synchronized (this) {
+                if (_ranks == null) {
+                    ranks = new int[_parent.size()];
+                    int size = 0;
+                    for (int id = 0; id < ranks.length; id++) {
+                        ranks[id] = _nodes.test(id) ? size++ : -1;
+                    }
+                    int[] ids = new int[size];
+                    for (int id = 0; id < ranks.length; id++) {
+                        if (ranks[id] >= 0) {
+                            ids[ranks[id]] = id;
+                        }
+                    }
+                    _ids = ids;
+                    _ranks = ranks;
+                }
+                ranks = _ranks;
+            }
+        }
+        return ranks;
+    }
+
+    private int[] ids() {
+        ranks();
+        return _ids;
+    }
+
+    private int toView(int parentId) {
+        return _nodes == null ? parentId : ranks()[parentId];
+    }
+
+    private boolean accepts(int from, int to) {
+        return (_nodes == null || (toView(from) >= 0 && toView(to) >= 0))
+                && (_edges == null || _edges.test(from, to));
+    }
+
+    /**
+     * Gets the ids in the view of the accepted neighbors of a Node, filtering its Edges
+     * on first visit. Threads racing on the same Node compute the same row, and keep
+     * the first one published.
+     */
+    private int[] row(int id, boolean out) {
+        AtomicReferenceArray<int[]> rows = out ? _outRows : _inRows;
+        if (rows == null) {
+            synchronized (this) {
+                if (_outRows == null) {
+                    _inRows = new AtomicReferenceArray<int[]>(size());
+                    _outRows = new AtomicReferenceArray<int[]>(size());
+                }
+                rows = out ? _outRows : _inRows;
+            }
+        }
+        int[] row = rows.get(id);
+        if (row == null) {
+            int parentId = toParent(id);
+            int degree = out ? _parent.outDegree(parentId) : _parent.inDegree(parentId);
+            int[] neighbors = new int[degree];
+            int count = 0;
+            for (int i = 0; i < degree; i++) {
+                int neighbor = out ? _parent.outNeighbor(parentId, i) : _parent.inNeighbor(parentId, i);
+                if (out ? accepts(parentId, neighbor) : accepts(neighbor, parentId)) {
+                    neighbors[count++] = toView(neighbor);
+                }
+            }
+            row = count == degree ? neighbors : Arrays.copyOf(neighbors, count);
+            if (!rows.compareAndSet(id, null, row)) {
+                row = rows.get(id);
+            }
+        }
+        return row;
+    }
+
+    private int degree(int id, boolean out) {
+        if (_nodes == null && _edges == null) {
+            return out ? _parent.outDegree(id) : _parent.inDegree(id);
+        }
+        return row(id, out).length;
+    }
+
+    private int neighbor(int id, int i, boolean out) {
+        if (_nodes == null && _edges == null) {
+            return out ? _parent.outNeighbor(id, i) : _parent.inNeighbor(id, i);
+        }
+        return row(id, out)[i];
+    }
+
+    @Override
+    public int size() {
+        return _nodes == null ? _parent.size() : ids().length;
+    }
+
+    @Override
+    public long edgeCount() {
+        if (_edgeCount < 0) {
+            long count = 0;
+            for (int id = 0; id < size(); id++) {
+                count += outDegree(id);
+            }
+            _edgeCount = count;
+        }
+        return _edgeCount;
+    }
+
+    @Override
+    public String getName(int id) {
+        return _parent.getName(toParent(id));
+    }
+
+    @Override
+    public int indexOf(String name) {
+        int parentId = _parent.indexOf(name);
+        return parentId < 0 ? -1 : toView(parentId);
+    }
+
+    @Override
+    public int outDegree(int id) {
+        return degree(id, true);
+    }
+
+    @Override
+    public int outNeighbor(int id, int i) {
+        return neighbor(id, i, true);
+    }
+
+    @Override
+    public int inDegree(int id) {
+        return degree(id, false);
+    }
+
+    @Override
+    public int inNeighbor(int id, int i) {
+        return neighbor(id, i, false);
+    }
+}
@@ -0,0 +1,635 @@
+package Graphs.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import Graphs.main.CompressedStorage;
+import Graphs.main.CsrStorage;
+import Graphs.main.DistanceTable;
+import Graphs.main.Graph;
+import Graphs.main.GraphEvent;
+import Graphs.main.GraphEventPublisher;
+import Graphs.main.GraphJournal;
+import Graphs.main.GraphServer;
+import Graphs.main.GraphStorage;
+import Graphs.main.NodeLevels;
+import Graphs.main.OffHeapStorage;
+import Graphs.main.Path;
+import Graphs.main.ReorderedStorage;
+import Graphs.main.ShardedGraph;
+import Graphs.main.SubgraphView;
+
+public class Graphs4_tests extends TestsCore {
+
+    //____ QUERY CACHE ____
+    /** The Graph keeps a version counter bumped by every structural change,
+     * and caches the results of its structural queries for as long as the
+     * version does not change.
+     */
+    @Test
+    public void test_queryCache() throws FileNotFoundException {
+        Graph<String> g = readGraph("/Graphs/data/medium1.txt");
+        long version = g.getVersion();
+        assertTrue(g.isDAGraph());
+        assertSame(g.topoSort(), g.topoSort());
+        assertEquals(version, g.getVersion());
+        
+        // Closing a cycle changes the version and invalidates the cached results.
+        g.addEdge("E", "A");
+        assertTrue(version < g.getVersion());
+        assertFalse(g.isDAGraph());
+        assertEquals(null, g.topoSort());
+        
+        // Removing the edge brings back a DAG.
+        g.removeEdge("E", "A");
+        assertTrue(g.isDAGraph());
+    }
+    
+    //____ POINT TO POINT SHORTEST PATH ____
+    /** shortestPath(from, to) searches from both ends at once and returns
+     * one of the shortest paths along with its cost (number of edges), or null
+     * if the destination cannot be reached.
+     */
+    @Test
+    public void test_shortestPath() throws FileNotFoundException {
+        Graph<String> g = readGraph("/Graphs/data/complex1.txt");
+        Path<String> p = g.shortestPath("A", "E");
+        assertEquals(3, p.getCost());
+        assertEquals("A", p.getNodes().get(0));
+        assertEquals("E", p.getNodes().get(3));
+        assertEquals(0, g.shortestPath("C", "C").getCost());
+        assertEquals("F > E > G > D", g.shortestPath("F", "D").toString());
+        
+        g = readGraph("/Graphs/data/medium2.txt");
+        assertEquals(3, g.shortestPath("E", "D").getCost());
+        assertNull(g.shortestPath("E", "A"));
+    }
+    
+    /** The A* heuristic steers the search without changing the cost of the result.
+     * The graph below is a 10 x 10 grid, with edges going right and down, and the
+     * heuristic is the Manhattan distance between two cells.
+     */
+    @Test
+    public void test_shortestPathAStar() {
+        Graph<Integer> g = new Graph<Integer>();
+        for (int i = 0; i < 100; i++) {
+            g.addNode(i);
+        }
+        for (int i = 0; i < 100; i++) {
+            if (i % 10 < 9) {
+                g.addEdge(i, i + 1);
+            }
+            if (i / 10 < 9) {
+                g.addEdge(i, i + 10);
+            }
+        }
+        Path<Integer> p = g.shortestPath(0, 99, (a, b) -> Math.abs(a / 10 - b / 10) + Math.abs(a % 10 - b % 10));
+        assertEquals(18, p.getCost());
+        assertEquals(18, g.shortestPath(0, 99).getCost());
+        assertEquals(4, g.shortestPath(23, 45, (a, b) -> Math.abs(a / 10 - b / 10) + Math.abs(a % 10 - b % 10)).getCost());
+        assertNull(g.shortestPath(99, 0));
+    }
+    
+    //____ STRONGLY CONNECTED COMPONENTS ____
+    /** Each strongly connected component groups the Nodes reaching each other. The
+     * components are numbered in topological order and the condensation (one Node per
+     * component) is a DAG which can be sorted even if the original Graph has cycles.
+     */
+    @Test
+    public void test_stronglyConnectedComponents() throws FileNotFoundException {
+        Graph<String> g = readGraph("/Graphs/data/complex1.txt");
+        assertEquals("{A=0, B=1, C=2, D=3, E=3, F=3, G=3}", g.stronglyConnectedComponents().toString());
+        Graph<Integer> c = g.condensation();
+        assertEquals("0 > 1 3\n1 > 2 3\n2 > 3\n3 > ", c.toString());
+        assertTrue(c.isDAGraph());
+        assertEquals("{0=[A], 1=[B], 2=[C], 3=[D, E, F, G]}", g.topoSortComponents().toString());
+        
+        g = readGraph("/Graphs/data/basic3.txt");
+        assertEquals("{A=1, B=1, C=1, D=0, E=0, F=0}", g.stronglyConnectedComponents().toString());
+        assertEquals("{0=[A, B, C, D, E, F]}", g.topoSortComponents().toString());
+        g.addEdge("B", "E");
+        assertEquals("{0=[A, B, C], 1=[D, E, F]}", g.topoSortComponents().toString());
+    }
+    
+    //____ OFF-HEAP STORAGE ____
+    /** A Graph backed by an OffHeapStorage answers the structural queries
+     * exactly like the heap based Graph it was copied from, and cannot be modified.
+     */
+    @Test
+    public void test_offHeapStorage() throws FileNotFoundException {
+        for (String file : new String[] {"/Graphs/data/medium1.txt", "/Graphs/data/medium2.txt", "/Graphs/data/basic3.txt"}) {
+            Graph<String> g = readGraph(file);
+            Graph<String> o = Graph.fromStorage(OffHeapStorage.copyOf(g.getStorage()));
+            assertEquals(g.size(), o.size());
+            assertEquals(g.isConnected(), o.isConnected());
+            assertEquals(g.isDAGraph(), o.isDAGraph());
+            assertEquals(g.topoSort(), o.topoSort());
+            assertEquals(g.countPartitions(), o.countPartitions());
+            assertEquals(g.getInDegrees(), o.getInDegrees());
+            assertEquals(g.getOutDegrees(), o.getOutDegrees());
+            assertEquals(g.dijkstra("A"), o.dijkstra("A"));
+            assertEquals(g.stronglyConnectedComponents(), o.stronglyConnectedComponents());
+        }
+        
+        OffHeapStorage.Builder builder = new OffHeapStorage.Builder();
+        int x = builder.addNode("X");
+        int y = builder.addNode("Y");
+        builder.addEdge(x, y);
+        Graph<String> o = Graph.fromStorage(builder.build());
+        assertEquals("X > Y\nY > ", o.toString());
+        assertEquals("X > Y", o.shortestPath("X", "Y").toString());
+        try {
+            o.addNode("Z");
+            fail("Read-only graph expected!");
+        } catch (RuntimeException e) {
+            assertEquals("Read-only graph!", e.getMessage());
+        }
+        try {
+            builder.addNode("Z");
+            fail("Built storage expected!");
+        } catch (RuntimeException e) {
+            assertEquals("Storage already built!", e.getMessage());
+        }
+    }
+    
+    //____ QUERY SERVER ____
+    /** The GraphServer answers the queries of many concurrent clients over a
+     * loopback socket, each response being terminated by an empty line.
+     */
+    @Test
+    public void test_graphServer() throws Exception {
+        Graph<String> g = readGraph("/Graphs/data/medium2.txt");
+        try (GraphServer server = new GraphServer(g)) {
+            InetSocketAddress address = (InetSocketAddress) server.start(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+            List<Future<String>> responses = new ArrayList<Future<String>>();
+            for (int i = 0; i < 200; i++) {
+                responses.add(clients.submit(() -> request(address, "topoSort", "dijkstra E", "canReach A D", "canReach D A", "countPartitions", "dijkstra Q")));
+            }
+            for (Future<String> response : responses) {
+                assertEquals("0 A E X Z|1 B F G Y|2 C|3 D||"
+                           + "A -1|B -1|C 2|D 3|E 0|F 1|G 1|X -1|Y -1|Z -1||"
+                           + "true||false||3||ERROR Node(s) not in the graph!||", response.get());
+            }
+            clients.shutdown();
+        }
+    }
+    
+    private String request(SocketAddress address, String... requests) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(address);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            String response = "";
+            for (String request : requests) {
+                out.println(request);
+                for (String line = in.readLine(); !line.isEmpty(); line = in.readLine()) {
+                    response += line + "|";
+                }
+                response += "|";
+            }
+            return response;
+        }
+    }
+    
+    //____ MULTI-SOURCE DISTANCES ____
+    /** dijkstraAll computes the distances from many sources at once, either into
+     * a DistanceTable or streamed to a consumer, matching dijkstra() for each source.
+     */
+    @Test
+    public void test_dijkstraAll() throws FileNotFoundException {
+        Graph<String> g = readGraph("/Graphs/data/complex1.txt");
+        List<String> sources = Arrays.asList("A", "B", "C", "D", "E", "F", "G");
+        DistanceTable table = g.dijkstraAll(sources);
+        assertEquals(7, table.size());
+        for (int row = 0; row < table.size(); row++) {
+            assertEquals(sources.get(row), table.getSource(row));
+            assertEquals(g.dijkstra(sources.get(row)), table.toMap(row));
+        }
+        assertEquals(3, table.getDistance("A", "E"));
+        assertEquals(-1, table.getDistance("D", "A"));
+        
+        ConcurrentHashMap<String, Integer> reached = new ConcurrentHashMap<String, Integer>();
+        g.dijkstraAll(sources, (source, distance) -> {
+            reached.put(source, (int) Arrays.stream(distance).filter(d -> d >= 0).count());
+        });
+        assertEquals("{A=7, B=6, C=5, D=4, E=4, F=4, G=4}", new TreeMap<String, Integer>(reached).toString());
+    }
+    
+    //____ ADAPTIVE EDGE SETS ____
+    /** Nodes keep their Edges in a sorted array while their degree is small and
+     * switch to a hash table as it grows, without changing how Edges behave.
+     */
+    @Test
+    public void test_highDegreeNode() {
+        Graph<Integer> g = new Graph<Integer>();
+        for (int i = 0; i <= 40; i++) {
+            g.addNode(i);
+        }
+        for (int i = 1; i <= 40; i++) {
+            g.addEdge(0, i);
+            g.addEdge(0, i);
+        }
+        assertEquals("{0=[1, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 2, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 3, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 4, 40, 5, 6, 7, 8, 9], 40=[0]}",
+                g.getOutDegrees().toString());
+        for (int i = 40; i > 2; i--) {
+            g.removeEdge(0, i);
+        }
+        g.removeEdge(0, 40);
+        assertEquals("0 > 1 2", g.toString().split("\n")[0]);
+        g.removeNode(1);
+        assertEquals("0 > 2", g.toString().split("\n")[0]);
+    }
+    
+    //____ PRIMITIVE RESULT VIEWS ____
+    /** topoSortLevels, outDegreeLevels and inDegreeLevels give the same groupings
+     * as topoSort, getOutDegrees and getInDegrees, as levels indexed by Node id.
+     */
+    @Test
+    public void test_nodeLevels() throws FileNotFoundException {
+        Graph<String> g = readGraph("/Graphs/data/medium2.txt");
+        NodeLevels topo = g.topoSortLevels();
+        assertEquals(4, topo.getLevelCount());
+        assertEquals(4, topo.getCount(1));
+        assertEquals(3, topo.getLevel(g.getStorage().indexOf("D")));
+        assertEquals("C", topo.getName(topo.getNodes(2).findFirst().getAsInt()));
+        assertEquals(g.topoSort(), topo.toTreeMap());
+        assertEquals(g.getOutDegrees(), g.outDegreeLevels().toTreeMap());
+        assertEquals(g.getInDegrees(), g.inDegreeLevels().toTreeMap());
+        assertEquals(0, g.inDegreeLevels().getCount(7));
+        
+        g = readGraph("/Graphs/data/basic1.txt");
+        assertNull(g.topoSortLevels());
+    }
+    
+    //____ SHARDS ____
+    /** shard() splits the Graph into one shard per partition, runs the structural
+     * queries on all the shards in parallel and merges their results.
+     */
+    @Test
+    public void test_shards() throws IOException {
+        Graph<String> g = readGraph("/Graphs/data/medium2.txt");
+        ShardedGraph shards = g.shard();
+        assertSame(shards, g.shard());
+        assertEquals(3, shards.size());
+        assertEquals(7, shards.getShard("C").size());
+        assertEquals(1, shards.getShard("X").edgeCount());
+        assertEquals(-1, shards.getShard("X").indexOf("A"));
+        assertEquals(g.isDAGraph(), shards.isDAGraph());
+        assertEquals(g.topoSort(), shards.topoSort());
+        assertEquals(g.dijkstra("E"), shards.dijkstra("E"));
+        assertFalse(shards.isConnected());
+        
+        java.nio.file.Path directory = Files.createTempDirectory("shards");
+        try {
+            shards.export(directory);
+            assertEquals(Arrays.asList("X > Y", "Y > "), Files.readAllLines(directory.resolve("shard-1.txt")));
+        } finally {
+            deleteDirectory(directory);
+        }
+        
+        g = readGraph("/Graphs/data/basic3.txt");
+        assertEquals(2, g.shard().size());
+        assertEquals(g.isDAGraph(), g.shard().isDAGraph());
+        assertNull(g.shard().topoSort());
+        assertTrue(g.shard().getGraph(0).isConnected());
+    }
+    
+    private void deleteDirectory(java.nio.file.Path directory) throws IOException {
+        try (Stream<java.nio.file.Path> files = Files.walk(directory)) {
+            for (java.nio.file.Path file : files.sorted(Comparator.reverseOrder()).toArray(java.nio.file.Path[]::new)) {
+                Files.delete(file);
+            }
+        }
+    }
+    
+    //____ JOURNAL ____
+    /** A journaled Graph is recovered, after it was last synced, from its latest
+     * snapshot and the mutations journaled after it.
+     */
+    @Test
+    public void test_journal() throws IOException {
+        java.nio.file.Path directory = Files.createTempDirectory("journal");
+        try {
+            GraphJournal<String> journal = GraphJournal.open(directory, name -> name, 1000, 8);
+            Graph<String> g = journal.getGraph();
+            for (String name : "A B C D E".split(" ")) {
+                g.addNode(name);
+            }
+            g.addEdge("A", "B");
+            g.addEdge("B", "C");
+            g.addEdge("C", "D");
+            // the snapshot is written by the background thread, at the latest on sync()
+            g.addEdge("D", "E");
+            journal.sync();
+            assertEquals(1, journal.getGeneration());
+            assertTrue(Files.exists(directory.resolve("snapshot-1")));
+            g.removeEdge("B", "C");
+            g.removeNode("E");
+            journal.sync();
+            
+            // recover without closing, as after a crash
+            GraphJournal<String> recovery = GraphJournal.open(directory, name -> name);
+            Graph<String> recovered = recovery.getGraph();
+            assertEquals(g.toString(), recovered.toString());
+            assertEquals(4, recovered.size());
+            recovery.close();
+            journal.close();
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+    
+    //____ SUBGRAPH VIEWS ____
+    /** subgraph() and SubgraphView filter the Nodes and Edges of a Graph without
+     * copying them, and all the structural queries run on the view.
+     */
+    @Test
+    public void test_subgraphView() throws FileNotFoundException {
+        Graph<String> g = readGraph("/Graphs/data/basic2.txt");
+        assertFalse(g.isDAGraph());
+        Graph<String> view = g.subgraph(name -> !name.equals("X"), (from, to) -> from.compareTo(to) < 0);
+        assertEquals(3, view.size());
+        assertTrue(view.isDAGraph());
+        assertEquals("{0=[A], 1=[B], 2=[C]}", view.topoSort().toString());
+        assertEquals(2, (int) view.dijkstra("A").get("C"));
+        assertEquals(4, g.size());
+        
+        BitSet nodes = new BitSet();
+        nodes.set(g.getStorage().indexOf("A"));
+        nodes.set(g.getStorage().indexOf("X"));
+        view = Graph.fromStorage(new SubgraphView(g.getStorage(), nodes, null));
+        assertEquals(2, view.getStorage().edgeCount());
+        assertTrue(view.isConnected());
+        assertEquals(-1, view.getStorage().indexOf("B"));
+        
+        // the view keeps filtering the snapshot it was created on, even once the Graph changed
+        g = new Graph<String>();
+        for (String name : "B C D".split(" ")) {
+            g.addNode(name);
+        }
+        view = g.subgraph(name -> !name.equals("B"), null);
+        g.addNode("A");
+        assertEquals("C > \nD > ", view.toString());
+        assertEquals(3, g.subgraph(name -> !name.equals("B"), null).size());
+        
+        // the Edges of a hub are filtered once, however the leaves interleave with its visits
+        int leaves = 20000;
+        String[] names = new String[leaves + 1];
+        int[] sources = new int[2 * leaves];
+        int[] targets = new int[2 * leaves];
+        names[0] = "hub";
+        for (int i = 1; i <= leaves; i++) {
+            names[i] = "L" + i;
+            sources[2 * i - 2] = 0;
+            targets[2 * i - 2] = i;
+            sources[2 * i - 1] = i;
+            targets[2 * i - 1] = (i % leaves) + 1;
+        }
+        GraphStorage hub = CsrStorage.fromEdges(names, sources, targets, false);
+        AtomicLong tests = new AtomicLong();
+        view = Graph.fromStorage(new SubgraphView(hub, (from, to) -> tests.incrementAndGet() > 0));
+        assertFalse(view.isDAGraph());
+        assertEquals(hub.edgeCount(), view.getStorage().edgeCount());
+        assertTrue(tests.get() <= 2 * hub.edgeCount());
+    }
+    
+    //____ BULK CSR BUILD ____
+    /** CsrStorage builds the adjacency of a Graph in bulk from raw arrays of
+     * Edge endpoints, optionally sorting and deduplicating the neighbors.
+     */
+    @Test
+    public void test_csrStorage() throws FileNotFoundException {
+        String[] names = { "A", "B", "C", "D", "E", "F", "G" };
+        int[] sources = { 0, 0, 1, 1, 2, 2, 3, 4, 4, 5, 6, 0 };
+        int[] targets = { 1, 6, 2, 5, 3, 6, 4, 5, 6, 4, 3, 1 };
+        Graph<String> g = Graph.fromStorage(CsrStorage.fromEdges(names, sources, targets, true));
+        Graph<String> expected = readGraph("/Graphs/data/complex1.txt");
+        assertEquals(11, g.getStorage().edgeCount());
+        assertEquals(expected.getOutDegrees(), g.getOutDegrees());
+        assertEquals(expected.getInDegrees(), g.getInDegrees());
+        assertEquals(expected.dijkstra("A"), g.dijkstra("A"));
+        assertEquals(expected.isDAGraph(), g.isDAGraph());
+        
+        CsrStorage raw = CsrStorage.fromEdges(7, sources, targets, false);
+        assertEquals(12, raw.edgeCount());
+        assertEquals(3, raw.outDegree(0));
+        assertEquals(6, raw.indexOf("6"));
+        assertEquals(-1, raw.indexOf("7"));
+    }
+    
+    //____ REORDERING ____
+    /** reorder() renumbers the Nodes for locality, keeping the mapping to the
+     * original ids and giving the same results for all the queries.
+     */
+    @Test
+    public void test_reorder() throws FileNotFoundException {
+        Graph<String> g = readGraph("/Graphs/data/medium2.txt");
+        for (ReorderedStorage.Order order : ReorderedStorage.Order.values()) {
+            Graph<String> r = g.reorder(order);
+            ReorderedStorage storage = (ReorderedStorage) r.getStorage();
+            for (int id = 0; id < storage.size(); id++) {
+                assertEquals(g.getStorage().getName(storage.toParent(id)), storage.getName(id));
+                assertEquals(id, storage.fromParent(storage.toParent(id)));
+            }
+            assertEquals(g.topoSort(), r.topoSort());
+            assertEquals(g.dijkstra("A"), r.dijkstra("A"));
+            assertEquals(g.countPartitions(), r.countPartitions());
+        }
+        
+        ReorderedStorage storage = (ReorderedStorage) g.reorder(ReorderedStorage.Order.BFS).getStorage();
+        assertEquals("A", storage.getName(0));
+        assertEquals(5, storage.indexOf("E"));
+        storage = (ReorderedStorage) g.reorder(ReorderedStorage.Order.DEGREE).getStorage();
+        assertEquals("C", storage.getName(0));
+        
+        // RCM starts from the Node of lowest degree, A, numbered last once the order is reversed
+        String[] names = { "H", "A", "B", "C", "D", "E" };
+        int[] sources = { 0, 0, 0, 0, 0, 1, 2, 3, 4 };
+        int[] targets = { 1, 2, 3, 4, 5, 2, 3, 4, 5 };
+        g = Graph.fromStorage(CsrStorage.fromEdges(names, sources, targets, true));
+        storage = (ReorderedStorage) g.reorder(ReorderedStorage.Order.RCM).getStorage();
+        assertEquals("A", storage.getName(5));
+        assertEquals("H", storage.getName(3));
+    }
+    
+    //____ COMPRESSED ADJACENCY ____
+    /** compress() keeps the sorted neighbors of each Node as varint encoded gaps,
+     * decoded on the fly by all the queries, including the rows longer than one block.
+     */
+    @Test
+    public void test_compressedStorage() throws FileNotFoundException {
+        Graph<String> g = readGraph("/Graphs/data/complex1.txt");
+        Graph<String> c = g.compress();
+        assertEquals(adjacency(g.getStorage()), adjacency(c.getStorage()));
+        assertEquals(g.getOutDegrees(), c.getOutDegrees());
+        assertEquals(g.getInDegrees(), c.getInDegrees());
+        assertEquals(g.dijkstra("A"), c.dijkstra("A"));
+        assertEquals(components(g.stronglyConnectedComponents()), components(c.stronglyConnectedComponents()));
+        assertEquals(g.getStorage().indexOf("F"), c.getStorage().indexOf("F"));
+        assertEquals(-1, c.getStorage().indexOf("Z"));
+        
+        int n = 3 * CompressedStorage.BLOCK;
+        int[] sources = new int[n];
+        int[] targets = new int[n];
+        for (int i = 0; i < n; i++) {
+            sources[i] = n / 2;
+            targets[i] = (i * 7) % n;
+        }
+        CsrStorage source = CsrStorage.fromEdges(n, sources, targets, true);
+        CompressedStorage storage = new CompressedStorage(source);
+        assertEquals(adjacency(source), adjacency(storage));
+        assertEquals(n, storage.outDegree(n / 2));
+        assertEquals(n - 1, storage.outNeighbor(n / 2, n - 1));
+        assertEquals(CompressedStorage.BLOCK, storage.outNeighbor(n / 2, CompressedStorage.BLOCK));
+        assertEquals(3, storage.outNeighbor(n / 2, 3));
+        assertEquals(n / 2, storage.inNeighbor(n - 1, 0));
+    }
+    
+    /**
+     * Gets the sorted names of the outgoing and incoming neighbors of each Node, by name.
+     */
+    private TreeMap<String, List<List<String>>> adjacency(GraphStorage storage) {
+        TreeMap<String, List<List<String>>> adjacency = new TreeMap<String, List<List<String>>>();
+        for (int id = 0; id < storage.size(); id++) {
+            List<String> out = new ArrayList<String>();
+            for (int i = 0; i < storage.outDegree(id); i++) {
+                out.add(storage.getName(storage.outNeighbor(id, i)));
+            }
+            List<String> in = new ArrayList<String>();
+            for (int i = 0; i < storage.inDegree(id); i++) {
+                in.add(storage.getName(storage.inNeighbor(id, i)));
+            }
+            Collections.sort(out);
+            Collections.sort(in);
+            adjacency.put(storage.getName(id), Arrays.asList(out, in));
+        }
+        return adjacency;
+    }
+    
+    /**
+     * Gets the members of each component, regardless of the numbering of the components.
+     */
+    private Set<Set<String>> components(TreeMap<String, Integer> components) {
+        TreeMap<Integer, Set<String>> members = new TreeMap<Integer, Set<String>>();
+        for (Map.Entry<String, Integer> entry : components.entrySet()) {
+            members.computeIfAbsent(entry.getValue(), component -> new TreeSet<String>()).add(entry.getKey());
+        }
+        return new HashSet<Set<String>>(members.values());
+    }
+    
+    //____ CHANGE EVENTS ____
+    /** Subscribers of events() receive batches of GraphEvents, enough to maintain
+     * the out-degrees of the Graph incrementally, and a subscriber which stops
+     * requesting is cancelled when its buffer overflows.
+     */
+    @Test
+    public void test_events() throws Exception {
+        Graph<String> g = readGraph("/Graphs/data/medium1.txt");
+        LinkedBlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+        g.events().subscribe(new Flow.Subscriber<List<GraphEvent<String>>>() {
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+            public void onNext(List<GraphEvent<String>> batch) {
+                received.addAll(batch);
+            }
+            public void onError(Throwable error) {
+                received.add(error);
+            }
+            public void onComplete() {
+            }
+        });
+        
+        TreeMap<String, Integer> degrees = new TreeMap<String, Integer>();
+        for (String line : g.toString().split("\n")) {
+            String[] tokens = line.trim().split(" +");
+            degrees.put(tokens[0], tokens.length - 2);
+        }
+        g.addNode("G");
+        g.addEdge("G", "A");
+        g.addEdge("G", "A");
+        g.addEdge("A", "G");
+        g.removeEdge("B", "A");
+        g.removeNode("C");
+        for (Object event = received.poll(5, TimeUnit.SECONDS); event != null; event = received.poll(100, TimeUnit.MILLISECONDS)) {
+            GraphEvent<?> e = (GraphEvent<?>) event;
+            switch (e.getType()) {
+            case NODE_ADDED:
+                degrees.put((String) e.getData(), 0);
+                break;
+            case NODE_REMOVED:
+                degrees.remove(e.getData());
+                break;
+            case EDGE_ADDED:
+                degrees.merge((String) e.getData(), 1, Integer::sum);
+                break;
+            case EDGE_REMOVED:
+                degrees.merge((String) e.getData(), -1, Integer::sum);
+                break;
+            }
+        }
+        TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+        for (String line : g.toString().split("\n")) {
+            String[] tokens = line.trim().split(" +");
+            expected.put(tokens[0], tokens.length - 2);
+        }
+        assertEquals(expected, degrees);
+        
+        GraphEventPublisher<String> publisher = new GraphEventPublisher<String>(Runnable::run, 2, 2);
+        publisher.subscribe(new Flow.Subscriber<List<GraphEvent<String>>>() {
+            public void onSubscribe(Flow.Subscription subscription) {
+            }
+            public void onNext(List<GraphEvent<String>> batch) {
+            }
+            public void onError(Throwable error) {
+                received.add(error);
+            }
+            public void onComplete() {
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            publisher.publish(new GraphEvent<String>(GraphEvent.Type.NODE_ADDED, "N" + i, null, i));
+        }
+        assertEquals("Subscriber overflow!", ((Throwable) received.poll()).getMessage());
+        assertFalse(publisher.hasSubscribers());
+    }
+}
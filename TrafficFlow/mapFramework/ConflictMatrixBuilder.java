@@ -0,0 +1,178 @@
+package TrafficFlow.mapFramework;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task computing the conflict matrix of the routes of a map in a single pass
+ * over the pixels, rather than testing each pair of routes over the whole map.
+ * The map is split in horizontal strips, in halves until each task holds a strip small
+ * enough to balance the load across the pool. Each strip is then scanned row by row:
+ * the opaque routes of each pixel are gathered as a bitset, and whenever a pixel is
+ * opaque in routes of different origins, each of these routes is marked as conflicting
+ * with the others. The conflicts of the strips are merged as the tasks join.
+ * <p>
+ * The overlays are read directly from their int[] data buffers. Overlays of any other
+ * type than TYPE_INT_ARGB or TYPE_INT_ARGB_PRE are converted to TYPE_INT_ARGB first.
+ * @see MapImage#getConflicts()
+ */
+class ConflictMatrixBuilder extends RecursiveTask<long[][]> {
+    private static final long serialVersionUID = 1L;
+
+    private String[] _routes;
+    private int[][] _pixels;
+    private int[] _widths;
+    private int[] _heights;
+    // routes of the same origin as each route, as a bitset of route indexes
+    private long[][] _origins;
+    private int _width;
+    private int _from;
+    private int _to;
+    private int _strip;
+
+    /**
+     * Constructs the task for the whole map.
+     * @param routes - the names of the routes, in the order of the rows of the matrix.
+     * @param overlays - the overlay of each route, at the same index as its name.
+     * @param width - the width of the map.
+     * @param height - the height of the map.
+     */
+    ConflictMatrixBuilder(String[] routes, BufferedImage[] overlays, int width, int height) {
+        _routes = routes;
+        _pixels = new int[routes.length][];
+        _widths = new int[routes.length];
+        _heights = new int[routes.length];
+        for (int i = 0; i < routes.length; i++) {
+            _pixels[i] = argbPixels(overlays[i]);
+            _widths[i] = overlays[i].getWidth();
+            _heights[i] = overlays[i].getHeight();
+        }
+        _origins = new long[routes.length][(routes.length + 63) / 64];
+        for (int i = 0; i < routes.length; i++) {
+            for (int j = 0; j < routes.length; j++) {
+                if (routes[i].charAt(0) == routes[j].charAt(0)) {
+                    _origins[i][j / 64] |= 1L << j;
+                }
+            }
+        }
+        _width = width;
+        _from = 0;
+        _to = height;
+        _strip = Math.max(1, height / (8 * ForkJoinPool.getCommonPoolParallelism()));
+    }
+
+    private ConflictMatrixBuilder(ConflictMatrixBuilder parent, int from, int to) {
+        _routes = parent._routes;
+        _pixels = parent._pixels;
+        _widths = parent._widths;
+        _heights = parent._heights;
+        _origins = parent._origins;
+        _width = parent._width;
+        _from = from;
+        _to = to;
+        _strip = parent._strip;
+    }
+
+    /**
+     * Gets the pixels of an image as packed ARGB ints, one row after the other.
+     * @param image - the image to be read.
+     * @return the data buffer of the image, or of a TYPE_INT_ARGB copy of the image
+     * if its pixels are not stored that way.
+     */
+    static int[] argbPixels(BufferedImage image) {
+        if ((image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_ARGB_PRE)
+                && image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) image.getRaster().getSampleModel()).getScanlineStride() == image.getWidth()
+                && image.getRaster().getSampleModelTranslateX() == 0
+                && image.getRaster().getSampleModelTranslateY() == 0) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics g = copy.getGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Expands the conflicts of the routes into a matrix.
+     * @param conflicts - the routes each route conflicts with, as bitsets of route indexes.
+     * @return the matrix, where [i][j] is true if the routes i and j conflict.
+     */
+    static boolean[][] toMatrix(long[][] conflicts) {
+        boolean[][] matrix = new boolean[conflicts.length][conflicts.length];
+        for (int i = 0; i < conflicts.length; i++) {
+            for (int j = 0; j < conflicts.length; j++) {
+                matrix[i][j] = (conflicts[i][j / 64] & (1L << j)) != 0;
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    protected long[][] compute() {
+        if (_to - _from > _strip) {
+            int middle = (_from + _to) >>> 1;
+            ConflictMatrixBuilder lower = new ConflictMatrixBuilder(this, middle, _to);
+            lower.fork();
+            long[][] conflicts = new ConflictMatrixBuilder(this, _from, middle).compute();
+            long[][] lowerConflicts = lower.join();
+            for (int i = 0; i < conflicts.length; i++) {
+                for (int w = 0; w < conflicts[i].length; w++) {
+                    conflicts[i][w] |= lowerConflicts[i][w];
+                }
+            }
+            return conflicts;
+        }
+
+        int routes = _routes.length;
+        int words = (routes + 63) / 64;
+        long[][] conflicts = new long[routes][words];
+        // opaque routes of each pixel of the row, as bitsets of route indexes
+        long[] opaque = new long[_width * words];
+        for (int y = _from; y < _to; y++) {
+            boolean shared = false;
+            for (int r = 0; r < routes; r++) {
+                if (y >= _heights[r]) {
+                    continue;
+                }
+                int[] pixels = _pixels[r];
+                int row = y * _widths[r];
+                int width = Math.min(_width, _widths[r]);
+                int word = r / 64;
+                long bit = 1L << r;
+                for (int x = 0; x < width; x++) {
+                    if ((pixels[row + x] >>> 24) != 0) {
+                        shared |= opaque[x * words + word] != 0;
+                        opaque[x * words + word] |= bit;
+                    }
+                }
+            }
+            if (!shared && words == 1) {
+                // no pixel of the row is opaque in two routes
+                Arrays.fill(opaque, 0);
+                continue;
+            }
+            for (int x = 0; x < _width; x++) {
+                int first = x * words;
+                for (int w = 0; w < words; w++) {
+                    for (long bits = opaque[first + w]; bits != 0; bits &= bits - 1) {
+                        int r = w * 64 + Long.numberOfTrailingZeros(bits);
+                        for (int v = 0; v < words; v++) {
+                            conflicts[r][v] |= opaque[first + v] & ~_origins[r][v];
+                        }
+                    }
+                }
+                for (int w = 0; w < words; w++) {
+                    opaque[first + w] = 0;
+                }
+            }
+        }
+        return conflicts;
+    }
+}
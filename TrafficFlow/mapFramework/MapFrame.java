@@ -8,6 +8,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.function.Consumer;
 
 import drawing.DrawingFrame;
@@ -26,8 +28,8 @@ import drawing.KeyInterceptor;
 public class MapFrame extends DrawingFrame {
     private MapImage _mapImage;
     private String Collision;
-    private HashMap<Integer, HashSet<String>> intervals;
-    private HashSet<String> interval;
+    private TreeMap<Integer, TreeSet<String>> intervals;
+    private TreeSet<String> interval;
     private int mapKey;
     // Region: [private] Routes manual display
     private class RouteNodeInfo {
@@ -57,28 +59,8 @@ public class MapFrame extends DrawingFrame {
     }
 
     private void ColorGraph(){
-        ArrayList<String> set = new ArrayList<String>();
-        set.addAll(_mapImage.getRoutes());
-        HashSet<String> temp = new HashSet<String>();
-        intervals.put(0,temp);
-        int mapIndex = 1;
-        boolean added = false;
-        for(String str : set){
-            added = false;
-            for(HashSet<String> s : intervals.values()){
-                if(!checkCollisions(s, str)){
-                    s.add(str);
-                    added = true;
-                }
-            }
-            if(!added){
-                temp = new HashSet<>();
-                temp.add(str);
-                intervals.put(mapIndex,temp);
-                mapIndex++;
-            }
-        }
-        for(Map.Entry<Integer, HashSet<String>> e : intervals.entrySet()){
+        intervals = new PhasePlanner(_mapImage).plan();
+        for(Map.Entry<Integer, TreeSet<String>> e : intervals.entrySet()){
             System.out.println("Group " + e.getKey());
             for(String string : e.getValue()){
                 System.out.printf(string + ", ");
@@ -88,6 +70,9 @@ public class MapFrame extends DrawingFrame {
     }
 
     private void showIntervals(){
+        if(intervals.isEmpty()){
+            return;
+        }
         if(interval == null){
             mapKey = 0;
             
@@ -101,12 +86,6 @@ public class MapFrame extends DrawingFrame {
         
     }
 
-    private boolean checkCollisions(Set<String> s1, String s2){
-        for(String s : s1){
-            if(_mapImage.collide(s,s2)) return true;
-        }
-        return false;
-    }   
 
 
     
@@ -137,11 +116,7 @@ public class MapFrame extends DrawingFrame {
         } else {
             String head = _mapImage.getOverlays().iterator().next();
             s.add(head);
-            for(String str : _mapImage.getRoutes()){
-                if(_mapImage.collide(str, head)){
-                    s.add(str);
-                }
-            }
+            s.addAll(_mapImage.getConflicts().getOrDefault(head, new HashSet<String>()));
         }
         _mapImage.setOverlays(s);
         setStatusMessage("Routes: " + s);
@@ -202,7 +177,6 @@ public class MapFrame extends DrawingFrame {
      */
     public MapFrame(MapImage mapImage) throws IOException {
         super(mapImage);
-        intervals = new HashMap<Integer, HashSet<String>>();
         
         
         // adjust window title
@@ -1,25 +1,42 @@
 package TrafficFlow.mapFramework;
 
-import java.awt.Graphics;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.imageio.ImageIO;
 
@@ -34,16 +51,37 @@ import drawing.Drawing;
  * @see #getRoutes()
  * @see #setOverlays(String...)
  * @see #collide(String...)
+ * @see #getConflicts()
+ * @see OverlayCache
  */
 public class MapImage extends Drawing {
     // File name for the base map image (i.e. "Ravenna")
     private String _mapName;
-    // Map<overlay_name, overlay_image> (i.e. {<"AB", imageAB>, <"AC", imageAC>, ..})
+    // Map<overlay_name, overlay_image> (i.e. {<"AB", imageAB>, <"AC", imageAC>, ..}), null until decoded or once evicted
     private HashMap<String, BufferedImage> _mapOverlays;
-    // Routes to be overlaid on the map
-    private Set<String> _overlays = new HashSet<String>();
+    // Map<overlay_name, overlay_source>, the encoded (.png) overlays, decoded on demand
+    private HashMap<String, ByteBuffer> _overlaySources = new HashMap<String, ByteBuffer>();
+    // Cache bounding the memory used by the decoded overlays
+    private OverlayCache _cache = OverlayCache.getDefault();
+    // Data buffer of the base map
+    private int[] _basePixels;
+    // Routes to be overlaid on the map, in the order they are composited
+    private Set<String> _overlays = new LinkedHashSet<String>();
+    // Base map composited with the overlays, null until first requested
+    private BufferedImage _composite;
+    // Map<overlay_name, opacity_mask> (i.e. {<"AB", maskAB>, <"AC", maskAC>, ..})
+    private HashMap<String, OpacityMask> _opacityMasks = new HashMap<String, OpacityMask>();
+    // Map<route_name, route_index> into the conflict matrix, routes indexed in name order
+    private HashMap<String, Integer> _routeIndex = new HashMap<String, Integer>();
+    // Conflict matrix: _conflicts[i][j] is true if routes i and j collide
+    private boolean[][] _conflicts = new boolean[0][0];
+    // Map<route_name, colliding_routes> (i.e. {<"AB", {"CA", "DB"}>, ..})
+    private Map<String, Set<String>> _conflictSets = Collections.emptyMap();
 
     // Region: [private] File IO
+    // Last bytes of an indexed map file, following the position of its table of contents
+    private static final int INDEX_MAGIC = 0x4D415049;
+
     /**
      * Private class definition used for serialization/deserialization of the
      * MapImage object to/from an enhanced .jpeg file.
@@ -53,17 +91,40 @@ public class MapImage extends Drawing {
         private HashMap<String, String> _mapOverlaysRaw = new HashMap<String, String>();
     };
     
-    private static String imageToBase64(BufferedImage image) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        ImageIO.write(image, "png", out);
-        return Base64.getEncoder().encodeToString(out.toByteArray());
+    /**
+     * Gets a stream reading the content of a buffer, e.g. of a memory mapped file,
+     * without copying it.
+     * @param buffer - the buffer to be read, from its position to its limit.
+     * @return the stream reading a duplicate of the buffer.
+     */
+    private static InputStream bufferToStream(ByteBuffer buffer) {
+        ByteBuffer source = buffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return source.hasRemaining() ? source.get() & 0xff : -1;
+            }
+            
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (length > 0 && !source.hasRemaining()) {
+                    return -1;
+                }
+                length = Math.min(length, source.remaining());
+                source.get(bytes, offset, length);
+                return length;
+            }
+        };
     }
     
-    private static BufferedImage base64ToImage(String base64) throws IOException {
-        byte[] imgBytes = Base64.getDecoder().decode(base64);
-        InputStream imgStream = new ByteArrayInputStream(imgBytes);
-        BufferedImage image = ImageIO.read(imgStream);
-        return image;
+    private static ByteBuffer slice(ByteBuffer buffer, long offset, long length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            throw new IOException("Corrupt map file!");
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.position((int) offset);
+        slice.limit((int) (offset + length));
+        return slice.slice();
     }
     
     private static byte[] toByteArray(BigInteger big, int minLength) {
@@ -76,7 +137,7 @@ public class MapImage extends Drawing {
         return returnArray;
     }
     
-    private static MapImage loadFromFile(File file) throws IOException {
+    private static MapImage loadFromFile(File file, OverlayCache cache) throws IOException {
         Path filePath = Paths.get(file.getAbsolutePath());
         byte[] rawBytes = Files.readAllBytes(filePath);
         byte[] rawOffset = Arrays.copyOfRange(rawBytes, rawBytes.length-4, rawBytes.length);
@@ -90,37 +151,412 @@ public class MapImage extends Drawing {
         BufferedImage image = ImageIO.read(imageStream);
         
         MapImage mapImage = new MapImage(mapMetadata._mapName, image);
+        mapImage._cache = cache;
         for(Map.Entry<String, String> mapOverlayRaw : mapMetadata._mapOverlaysRaw.entrySet())
         {
-            mapImage._mapOverlays.put(
+            mapImage.addOverlay(
                     mapOverlayRaw.getKey(), 
-                    base64ToImage(mapOverlayRaw.getValue()));
+                    ByteBuffer.wrap(Base64.getDecoder().decode(mapOverlayRaw.getValue())));
+        }
+        
+        mapImage.buildConflicts();
+        return mapImage;
+    }
+    
+    /**
+     * Memory maps a map file if it is an indexed map file.
+     * @param file - the map file.
+     * @return the content of the file, or null if the file is not an indexed map file.
+     * @throws IOException - failure in reading from the disk.
+     * @see #saveIndexed(String)
+     */
+    private static ByteBuffer mapIndexedFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            if (size < 12 || channel.read(magic, size - 4) != 4 || magic.getInt(0) != INDEX_MAGIC) {
+                return null;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Map file too large!");
+            }
+            // the mapping remains valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+    
+    /**
+     * Loads an indexed map file: only the base map is decoded, each overlay is decoded
+     * from the file the first time it is used, and the conflict matrix is read from the file.
+     * @param buffer - the content of the file.
+     * @param cache - the cache of the decoded overlays.
+     * @return the new MapImage.
+     * @throws IOException - the file is corrupt.
+     */
+    private static MapImage loadFromIndexedFile(ByteBuffer buffer, OverlayCache cache) throws IOException {
+        long tocOffset = buffer.getLong(buffer.limit() - 12);
+        DataInputStream toc = new DataInputStream(bufferToStream(slice(buffer, tocOffset, buffer.limit() - 12 - tocOffset)));
+        int baseLength = toc.readInt();
+        String mapName = toc.readUTF();
+        BufferedImage image = ImageIO.read(bufferToStream(slice(buffer, 0, baseLength)));
+        if (image == null) {
+            throw new IOException("Corrupt map file!");
         }
         
+        MapImage mapImage = new MapImage(mapName, image);
+        mapImage._cache = cache;
+        String[] routes = new String[toc.readInt()];
+        for (int i = 0; i < routes.length; i++) {
+            routes[i] = toc.readUTF();
+            long offset = toc.readLong();
+            int length = toc.readInt();
+            mapImage.addOverlay(routes[i], slice(buffer, offset, length));
+        }
+        long[][] conflicts = new long[routes.length][(routes.length + 63) / 64];
+        for (long[] row : conflicts) {
+            for (int w = 0; w < row.length; w++) {
+                row[w] = toc.readLong();
+            }
+        }
+        mapImage.setConflicts(routes, ConflictMatrixBuilder.toMatrix(conflicts));
         return mapImage;
     }
     
-    private static MapImage loadFromDir(File dir) throws IOException {
+    private static MapImage loadFromDir(File dir, OverlayCache cache) throws IOException {
         // Load the baseMap and create the mapImage
         String mapName = dir.getName();
         File mapFile = new File(dir.getName() + "/" + mapName + "_.jpg");
         MapImage mapImage = new MapImage(mapName, ImageIO.read(mapFile));
+        mapImage._cache = cache;
         
         // Load the overlays into the mapImage
         FilenameFilter overlayFilter = (file, name)-> { return name.matches(dir + "_.+\\.png"); };
         for (String overlayFileName : dir.list(overlayFilter)) {
             File overlayFile = new File(dir.getName() + "/" + overlayFileName);
             String overlayName = overlayFileName.split("_|\\.")[1];
-            mapImage._mapOverlays.put(
+            mapImage.addOverlay(
                     overlayName,
-                    ImageIO.read(overlayFile));
+                    ByteBuffer.wrap(Files.readAllBytes(overlayFile.toPath())));
         }
+        mapImage.buildConflicts();
         
         // return the newly created and loaded mapImage
         return mapImage;
     }
     // EndRegion: [private] File IO
 
+    // Region: [private] Pixel buffers
+    /**
+     * Draws an image into a new image of the given size and type, e.g. such that
+     * all the images of the map share the same layout of pixels.
+     * @param image - the image to be converted.
+     * @param width - the width of the new image. Pixels beyond the image are transparent.
+     * @param height - the height of the new image. Pixels beyond the image are transparent.
+     * @param type - the type of the new image (i.e. BufferedImage.TYPE_INT_ARGB_PRE).
+     * @return the image itself if it already has the given size and type, the new image otherwise.
+     */
+    private static BufferedImage convert(BufferedImage image, int width, int height, int type) {
+        if (image.getType() == type && image.getWidth() == width && image.getHeight() == height
+                && image.getRaster().getSampleModelTranslateX() == 0 && image.getRaster().getSampleModelTranslateY() == 0) {
+            return image;
+        }
+        BufferedImage converted = new BufferedImage(width, height, type);
+        Graphics2D g = converted.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return converted;
+    }
+
+    /**
+     * Gets the data buffer of an image converted to TYPE_INT_ARGB_PRE, one row of
+     * pixels after the other.
+     * @param image - the image, as returned by convert().
+     * @return the pixels of the image, to be read and written directly.
+     */
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Composites the pixels of an overlay over the pixels of the map, within an area.
+     * The pixels are premultiplied, such that each channel of the result is the channel of
+     * the overlay plus the channel of the map scaled by the transparency of the overlay.
+     * @param map - the pixels of the map, modified in place.
+     * @param overlay - the pixels of the overlay.
+     * @param area - the area to be composited.
+     */
+    private void compositeOver(int[] map, int[] overlay, Rectangle area) {
+        int width = getWidth();
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int i = y * width + area.x, end = i + area.width; i < end; i++) {
+                int src = overlay[i];
+                int alpha = src >>> 24;
+                if (alpha == 0xff) {
+                    map[i] = src;
+                } else if (alpha != 0) {
+                    int dst = map[i];
+                    int scale = 0xff - alpha;
+                    map[i] = (alpha + ((dst >>> 24) * scale + 127) / 255) << 24
+                            | (((src >>> 16) & 0xff) + (((dst >>> 16) & 0xff) * scale + 127) / 255) << 16
+                            | (((src >>> 8) & 0xff) + (((dst >>> 8) & 0xff) * scale + 127) / 255) << 8
+                            | ((src & 0xff) + ((dst & 0xff) * scale + 127) / 255);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the pixels of the base map within an area.
+     * @param map - the composited pixels, modified in place.
+     * @param area - the area to be restored.
+     */
+    private void copyBase(int[] map, Rectangle area) {
+        int width = getWidth();
+        for (int y = area.y; y < area.y + area.height; y++) {
+            System.arraycopy(_basePixels, y * width + area.x, map, y * width + area.x, area.width);
+        }
+    }
+    // EndRegion: [private] Pixel buffers
+
+    // Region: [private] Collision masks
+    // Side, in pixels, of the square tiles the opacity masks are split into
+    private static final int TILE = 32;
+    // Number of longs holding the bits of a tile
+    private static final int TILE_WORDS = TILE * TILE / 64;
+
+    /**
+     * Private class definition for the opacity mask of a route overlay: one bit per pixel
+     * of the map, set if the pixel is not fully transparent. The map is split into tiles
+     * of TILE x TILE pixels and only the tiles holding opaque pixels are stored, each as
+     * TILE_WORDS longs (two rows of the tile per long), along with the bounding box of the
+     * opaque pixels and the occupancy of the tiles.
+     */
+    private static class OpacityMask {
+        // bounding box of the opaque pixels, null if the overlay is fully transparent
+        private Rectangle _bounds;
+        // one bit per tile of the map, in row-major order, set if the tile holds opaque pixels
+        private long[] _tiles;
+        // position in _bits of the first word of each tile, -1 for the tiles not stored
+        private int[] _offsets;
+        // bits of the stored tiles
+        private long[] _bits;
+    }
+
+    /**
+     * Adds a route overlay to this map, to be decoded on first use.
+     * @param route - the name of the route.
+     * @param source - the encoded (.png) pixels of the route, transparent outside of the route.
+     */
+    private void addOverlay(String route, ByteBuffer source) {
+        _mapOverlays.put(route, null);
+        _overlaySources.put(route, source);
+    }
+
+    /**
+     * Gets the overlay of a route, decoding it from its source on first use or once
+     * evicted from the overlay cache. The opacity mask of the overlay is built when
+     * it is first decoded, and kept when the overlay is evicted. The overlay cache is
+     * called once the lock of this map is released, as it may evict the overlays of
+     * other maps, which lock themselves.
+     * @param route - the name of the route.
+     * @return the overlay, or null if the route is not embedded in this map.
+     * @throws RuntimeException if the source of the overlay cannot be decoded.
+     */
+    private BufferedImage overlay(String route) {
+        BufferedImage overlay = null;
+        boolean decoded = false;
+        synchronized (this) {
+            overlay = _mapOverlays.get(route);
+            if (overlay == null && _overlaySources.containsKey(route)) {
+                try {
+                    overlay = ImageIO.read(bufferToStream(_overlaySources.get(route)));
+                } catch (IOException e) {
+                    throw new RuntimeException("Corrupt overlay " + route + "!", e);
+                }
+                if (overlay == null) {
+                    throw new RuntimeException("Corrupt overlay " + route + "!");
+                }
+                overlay = convert(overlay, getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+                _mapOverlays.put(route, overlay);
+                if (!_opacityMasks.containsKey(route)) {
+                    _opacityMasks.put(route, opacityMask(pixels(overlay)));
+                }
+                decoded = true;
+            }
+        }
+        if (decoded) {
+            _cache.put(this, route, 4L * getWidth() * getHeight());
+        } else if (overlay != null) {
+            _cache.touch(this, route);
+        }
+        return overlay;
+    }
+
+    /**
+     * Drops the pixels of an overlay evicted from the overlay cache.
+     * @param route - the name of the route.
+     */
+    synchronized void evict(String route) {
+        if (_overlaySources.containsKey(route)) {
+            _mapOverlays.put(route, null);
+        }
+    }
+
+    private int[] overlayPixels(String route) {
+        BufferedImage overlay = overlay(route);
+        return overlay == null ? null : pixels(overlay);
+    }
+
+    /**
+     * Gets the opacity mask of a route, decoding its overlay if the mask is not built yet.
+     * The lock of this map is not held while decoding, as the overlay cache may evict
+     * the overlays of other maps, which lock themselves.
+     * @param route - the name of the route.
+     * @return the opacity mask, or null if the route is not embedded in this map.
+     */
+    private OpacityMask opacityMask(String route) {
+        synchronized (this) {
+            if (_opacityMasks.containsKey(route)) {
+                return _opacityMasks.get(route);
+            }
+        }
+        overlay(route);
+        synchronized (this) {
+            return _opacityMasks.get(route);
+        }
+    }
+
+    /**
+     * Gets the encoded (.png) overlay of a route.
+     * @param route - the name of the route.
+     * @return the bytes of the encoded overlay.
+     */
+    private byte[] overlayToPng(String route) {
+        ByteBuffer source = _overlaySources.get(route).duplicate();
+        byte[] bytes = new byte[source.remaining()];
+        source.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Builds the opacity mask of an overlay.
+     * @param overlay - the pixels of the route, as many as the pixels of the map.
+     * @return the opacity mask, covering the whole map.
+     */
+    private OpacityMask opacityMask(int[] overlay) {
+        int width = getWidth();
+        int tilesX = (width + TILE - 1) / TILE;
+        int tilesY = (getHeight() + TILE - 1) / TILE;
+        long[] bits = new long[tilesX * tilesY * TILE_WORDS];
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+        for (int y = 0; y < getHeight(); y++) {
+            int row = y * width;
+            int rowWord = (y / TILE) * tilesX * TILE_WORDS + (y % TILE) * TILE / 64;
+            int rowShift = (y % TILE) * TILE % 64;
+            for (int x = 0; x < width; x++) {
+                if ((overlay[row + x] >>> 24) != 0) {
+                    bits[rowWord + (x / TILE) * TILE_WORDS] |= 1L << (rowShift + x % TILE);
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = y;
+                }
+            }
+        }
+
+        // keep the occupied tiles only
+        OpacityMask mask = new OpacityMask();
+        mask._tiles = new long[(tilesX * tilesY + 63) / 64];
+        mask._offsets = new int[tilesX * tilesY];
+        int stored = 0;
+        for (int tile = 0; tile < tilesX * tilesY; tile++) {
+            mask._offsets[tile] = -1;
+            for (int w = 0; w < TILE_WORDS; w++) {
+                if (bits[tile * TILE_WORDS + w] != 0) {
+                    mask._tiles[tile / 64] |= 1L << tile;
+                    mask._offsets[tile] = stored * TILE_WORDS;
+                    System.arraycopy(bits, tile * TILE_WORDS, bits, stored * TILE_WORDS, TILE_WORDS);
+                    stored++;
+                    break;
+                }
+            }
+        }
+        mask._bits = Arrays.copyOf(bits, stored * TILE_WORDS);
+        if (maxX >= 0) {
+            mask._bounds = new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        }
+        return mask;
+    }
+
+    /**
+     * Checks if any pixel of a tile is opaque in two different groups of masks.
+     * @param groups - the masks of the routes, grouped by origin.
+     * @param tile - the index of the tile.
+     * @return true if the groups collide within the tile.
+     */
+    private static boolean collide(OpacityMask[][] groups, int tile) {
+        for (int w = 0; w < TILE_WORDS; w++) {
+            long others = 0;
+            for (OpacityMask[] group : groups) {
+                long opaque = 0;
+                for (OpacityMask mask : group) {
+                    int offset = mask._offsets[tile];
+                    if (offset >= 0) {
+                        opaque |= mask._bits[offset + w];
+                    }
+                }
+                if ((others & opaque) != 0) {
+                    return true;
+                }
+                others |= opaque;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the conflict matrix of all the routes embedded in this map, in parallel,
+     * such that the conflicts between two routes are looked up rather than tested pixel by pixel.
+     * @see #conflicts(String, String)
+     * @see #getConflicts()
+     */
+    private void buildConflicts() {
+        String[] routes = new TreeSet<String>(_mapOverlays.keySet()).toArray(new String[0]);
+        BufferedImage[] overlays = new BufferedImage[routes.length];
+        for (int i = 0; i < routes.length; i++) {
+            overlays[i] = overlay(routes[i]);
+        }
+        setConflicts(routes, ConflictMatrixBuilder.toMatrix(ForkJoinPool.commonPool().invoke(
+                new ConflictMatrixBuilder(routes, overlays, getWidth(), getHeight()))));
+    }
+    
+    /**
+     * Sets the conflict matrix of the routes embedded in this map.
+     * @param routes - the names of the routes, in the order of the rows of the matrix.
+     * @param conflicts - the matrix, where [i][j] is true if the routes i and j collide.
+     */
+    private void setConflicts(String[] routes, boolean[][] conflicts) {
+        _routeIndex.clear();
+        for (int i = 0; i < routes.length; i++) {
+            _routeIndex.put(routes[i], i);
+        }
+        _conflicts = conflicts;
+        
+        TreeMap<String, Set<String>> conflictSets = new TreeMap<String, Set<String>>();
+        for (int i = 0; i < routes.length; i++) {
+            TreeSet<String> conflictSet = new TreeSet<String>();
+            for (int j = 0; j < routes.length; j++) {
+                if (_conflicts[i][j]) {
+                    conflictSet.add(routes[j]);
+                }
+            }
+            conflictSets.put(routes[i], Collections.unmodifiableSet(conflictSet));
+        }
+        _conflictSets = Collections.unmodifiableMap(conflictSets);
+    }
+    // EndRegion: [private] Collision masks
+
     // Region: [public] File IO
     /**
      * Loads the content of a folder or a file into a new MapImage object.<p>
@@ -128,7 +564,8 @@ public class MapImage extends Drawing {
      * the base map as a one-part name (i.e. "Ravenna_.jpg") and a set of overlay
      * file names as a two-parts names (i.e. "Ravenna_AB.png").<p>
      * If mapImagePath points to a file, the file is expected to be an enhanced .jpg
-     * image, embedding route overlays.
+     * image, embedding route overlays, or an indexed map file, whose overlays are only
+     * decoded when first used.
      * @param mapImagePath - path to an existing folder or an enhanced .jpg file<br>
      * e.g.: "C:/MyFolder/Ravenna" or "C:/MyFolder/Ravenna/Ravenna.jpg"<br>
      * @returns a new MapImage object containing the map.
@@ -136,47 +573,193 @@ public class MapImage extends Drawing {
      * @see #save(String)
      */
     public static MapImage load(String mapImagePath) throws IOException {
+        return load(mapImagePath, OverlayCache.getDefault());
+    }
+    
+    /**
+     * Loads the content of a folder or a file into a new MapImage object, whose decoded
+     * overlays are accounted for by the given cache rather than by the default one.
+     * @param mapImagePath - path to an existing folder or an enhanced .jpg file<br>
+     * e.g.: "C:/MyFolder/Ravenna" or "C:/MyFolder/Ravenna/Ravenna.jpg"<br>
+     * @param cache - the cache bounding the memory of the decoded overlays.
+     * @returns a new MapImage object containing the map.
+     * @throws IOException - failure locating or loading data from the disk.
+     * @see #load(String)
+     * @see OverlayCache#getDefault()
+     */
+    public static MapImage load(String mapImagePath, OverlayCache cache) throws IOException {
         File file = new File(mapImagePath);
         if (!file.exists()) {
             throw new IOException();
         }
         
         if (file.isDirectory()) {
-            return loadFromDir(file);
-        } else {
-            return loadFromFile(file);
+            return loadFromDir(file, cache);
         }
+        ByteBuffer indexedFile = mapIndexedFile(file);
+        return indexedFile != null ? loadFromIndexedFile(indexedFile, cache) : loadFromFile(file, cache);
     }
     
     /**
      * Saves the content of this MapImage object into an enhanced .jpeg file.
      * The resulting .jpeg file is an image of the base map followed by a 
-     * JSON serialized object containing the routes overlays.
+     * JSON serialized object containing the routes overlays. The file is written
+     * aside and then renamed, such that a map can be saved over the file it was loaded from.
+     * This fails on Windows for a map loaded from an indexed file, as a file cannot be
+     * replaced there while it is still mapped in memory.
      * @param mapImageFileName - the name of the .jpg file to be created.<br>
      * e.g.: "Ravenna.jpg"
-     * @throws IOException - failure in writing to the disk.
+     * @throws IOException - failure in writing to the disk, or in replacing a file which
+     * is still mapped in memory.
      * @see #load(String)
      */
     public void save(String mapImageFileName) throws IOException {
         MapMetadata mapMetadata = new MapMetadata();
         mapMetadata._mapName = _mapName;
-        for(Map.Entry<String, BufferedImage> mapOverlay : _mapOverlays.entrySet())
+        for(String route : _mapOverlays.keySet())
         {
             mapMetadata._mapOverlaysRaw.put(
-                    mapOverlay.getKey(),
-                    imageToBase64(mapOverlay.getValue()));
+                    route,
+                    Base64.getEncoder().encodeToString(overlayToPng(route)));
         }
         Gson serializer = new Gson();
         String jsonMapRoutes = serializer.toJson(mapMetadata);
-        Path mapImagePath = Paths.get(mapImageFileName);
-        ByteArrayOutputStream mapImageStream = new ByteArrayOutputStream();
-        ImageIO.write(this._image, "jpg", mapImageStream);
-        byte[] mapImageBytes = mapImageStream.toByteArray();
-        Files.write(mapImagePath, mapImageBytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        byte[] mapRoutesBytes = jsonMapRoutes.getBytes();
-        Files.write(mapImagePath, mapRoutesBytes, StandardOpenOption.APPEND);
-        byte[] mapImageLenBytes = toByteArray(BigInteger.valueOf(mapImageBytes.length), 4);
-        Files.write(mapImagePath, mapImageLenBytes, StandardOpenOption.APPEND);
+        Path mapImagePath = temporaryFile(Paths.get(mapImageFileName));
+        try {
+            ByteArrayOutputStream mapImageStream = new ByteArrayOutputStream();
+            ImageIO.write(convert(_image, getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB), "jpg", mapImageStream);
+            byte[] mapImageBytes = mapImageStream.toByteArray();
+            Files.write(mapImagePath, mapImageBytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            byte[] mapRoutesBytes = jsonMapRoutes.getBytes();
+            Files.write(mapImagePath, mapRoutesBytes, StandardOpenOption.APPEND);
+            byte[] mapImageLenBytes = toByteArray(BigInteger.valueOf(mapImageBytes.length), 4);
+            Files.write(mapImagePath, mapImageLenBytes, StandardOpenOption.APPEND);
+            replace(mapImagePath, Paths.get(mapImageFileName));
+        } finally {
+            Files.deleteIfExists(mapImagePath);
+        }
+    }
+    
+    /**
+     * Saves the content of this MapImage object into an indexed map file, which
+     * loads faster than an enhanced .jpeg file and decodes each overlay only when
+     * it is first used. The resulting file is an image of the base map, followed by
+     * the .png image of each overlay and by a table of contents: the name of the map,
+     * the position and length of each overlay and the conflict matrix of the routes.
+     * The file ends with the position of the table of contents and a marker.
+     * <p>
+     * The overlays not decoded yet are read from the file this map was loaded from, which
+     * stays mapped in memory. The file is thus written aside and then renamed, such that
+     * it never overwrites the file being read, e.g. when saving a map over its own file.
+     * This fails on Windows, where a file cannot be replaced while it is still mapped:
+     * save such a map under another name there.
+     * @param mapImageFileName - the name of the file to be created.<br>
+     * e.g.: "Ravenna.jpg"
+     * @throws IOException - failure in writing to the disk, or in replacing a file which
+     * is still mapped in memory.
+     * @see #load(String)
+     * @see #save(String)
+     */
+    public void saveIndexed(String mapImageFileName) throws IOException {
+        if (_routeIndex.size() != _mapOverlays.size()) {
+            buildConflicts();
+        }
+        String[] routes = new TreeSet<String>(_mapOverlays.keySet()).toArray(new String[0]);
+        ByteArrayOutputStream tocBytes = new ByteArrayOutputStream();
+        DataOutputStream toc = new DataOutputStream(tocBytes);
+        Path mapImagePath = temporaryFile(Paths.get(mapImageFileName));
+        try {
+            try (FileChannel channel = FileChannel.open(mapImagePath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteArrayOutputStream mapImageStream = new ByteArrayOutputStream();
+                ImageIO.write(convert(_image, getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB), "jpg", mapImageStream);
+                toc.writeInt(mapImageStream.size());
+                toc.writeUTF(_mapName);
+                writeFully(channel, ByteBuffer.wrap(mapImageStream.toByteArray()));
+                
+                toc.writeInt(routes.length);
+                for (String route : routes) {
+                    byte[] overlayBytes = overlayToPng(route);
+                    toc.writeUTF(route);
+                    toc.writeLong(channel.position());
+                    toc.writeInt(overlayBytes.length);
+                    writeFully(channel, ByteBuffer.wrap(overlayBytes));
+                }
+                for (int i = 0; i < routes.length; i++) {
+                    for (int w = 0; w < (routes.length + 63) / 64; w++) {
+                        long word = 0;
+                        for (int j = w * 64; j < Math.min(routes.length, (w + 1) * 64); j++) {
+                            word |= conflicts(routes[i], routes[j]) ? 1L << j : 0;
+                        }
+                        toc.writeLong(word);
+                    }
+                }
+                
+                long tocOffset = channel.position();
+                toc.writeLong(tocOffset);
+                toc.writeInt(INDEX_MAGIC);
+                toc.flush();
+                writeFully(channel, ByteBuffer.wrap(tocBytes.toByteArray()));
+            }
+            replace(mapImagePath, Paths.get(mapImageFileName));
+        } finally {
+            Files.deleteIfExists(mapImagePath);
+        }
+    }
+    
+    /**
+     * Creates an empty file next to the given file, to be written and then renamed over it.
+     * The new file gets the default permissions of a new file, or the permissions of the
+     * given file if it exists, as if the given file was overwritten in place.
+     * @param mapImagePath - the file to be replaced.
+     * @return the path of the new file.
+     * @throws IOException - failure in creating the file.
+     */
+    private static Path temporaryFile(Path mapImagePath) throws IOException {
+        Path directory = mapImagePath.toAbsolutePath().getParent();
+        Path file = null;
+        while (file == null) {
+            try {
+                file = Files.createFile(directory.resolve(mapImagePath.getFileName() + "."
+                        + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp"));
+            } catch (FileAlreadyExistsException e) {
+                // another file has that name, try another one
+            }
+        }
+        try {
+            if (Files.exists(mapImagePath)
+                    && Files.getFileStore(file).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(file, Files.getPosixFilePermissions(mapImagePath));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+    
+    /**
+     * Renames a written file over the file it replaces. On file systems where a file may
+     * be replaced while it is mapped (e.g. Linux), the MapImages loaded from the replaced
+     * file keep reading its previous content. Elsewhere (e.g. Windows) the file cannot be
+     * replaced as long as such a MapImage holds it mapped.
+     * @param file - the written file.
+     * @param mapImagePath - the file to be replaced.
+     * @throws IOException - failure in replacing the file.
+     */
+    private static void replace(Path file, Path mapImagePath) throws IOException {
+        try {
+            Files.move(file, mapImagePath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IOException("Cannot replace " + mapImagePath
+                    + ", it may still be mapped by a MapImage loaded from it!", e);
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
     }
     // EndRegion: [public] FileIO
     
@@ -188,6 +771,8 @@ public class MapImage extends Drawing {
      */
     public MapImage(String mapName, BufferedImage baseMap) {
         super(baseMap);
+        _image = convert(baseMap, baseMap.getWidth(), baseMap.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        _basePixels = pixels(_image);
         _mapName = mapName;
         _mapOverlays = new HashMap<String, BufferedImage>();
     }
@@ -220,7 +805,7 @@ public class MapImage extends Drawing {
      * @see #getRoutes()
      */
     public Set<String> getOverlays() {
-        return _overlays;
+        return Collections.unmodifiableSet(_overlays);
     }
     
     /**
@@ -236,14 +821,78 @@ public class MapImage extends Drawing {
     
     /**
      * Sets the routes to be overlaid on the map. This is expected
-     * to be a subset of all the routes embedded in this map.
+     * to be a subset of all the routes embedded in this map.<p>
+     * The composited map is updated in place, if already built: the added routes are
+     * drawn on top of it, and the area covered by the removed routes is redrawn
+     * from the base map and the remaining routes. Routes already overlaid keep their
+     * place, such that the composited map does not change if the routes do not change.
+     * The overlaid routes are pinned in the OverlayCache, while the others may be evicted.
      * @param routes - collection (List, or Set) with the routes to be overlaid on the map.
      * @see #getOverlays()
      * @see #getRoutes()
+     * @see #getImage()
+     * @see OverlayCache
      */
     public void setOverlays(Collection<String> routes) {
-        _overlays.clear();
-        _overlays.addAll(routes);
+        Set<String> overlays = new LinkedHashSet<String>(routes);
+        if (overlays.equals(_overlays)) {
+            return;
+        }
+        
+        Rectangle dirty = null;
+        for (String overlay : _overlays) {
+            if (!overlays.contains(overlay)) {
+                dirty = union(dirty, overlayBounds(overlay));
+                if (_mapOverlays.containsKey(overlay)) {
+                    _cache.unpin(this, overlay);
+                }
+            }
+        }
+        _overlays.retainAll(overlays);
+        List<String> added = new ArrayList<String>();
+        for (String overlay : overlays) {
+            if (!_overlays.contains(overlay)) {
+                added.add(overlay);
+                if (_mapOverlays.containsKey(overlay)) {
+                    _cache.pin(this, overlay);
+                }
+            }
+        }
+        _overlays.addAll(added);
+        if (_composite == null) {
+            return;
+        }
+        
+        int[] composite = pixels(_composite);
+        if (dirty != null) {
+            copyBase(composite, dirty);
+            for (String overlay : _overlays) {
+                Rectangle bounds = overlayBounds(overlay);
+                if (!added.contains(overlay) && bounds != null && bounds.intersects(dirty)) {
+                    compositeOver(composite, overlayPixels(overlay), bounds.intersection(dirty));
+                }
+            }
+        }
+        for (String overlay : added) {
+            Rectangle bounds = overlayBounds(overlay);
+            if (bounds != null) {
+                compositeOver(composite, overlayPixels(overlay), bounds);
+            }
+        }
+    }
+    
+    /**
+     * Gets the area of the map covered by the non-transparent pixels of a route.
+     * @param route - the name of the route.
+     * @return the bounding box of the route, or null for unknown or fully transparent routes.
+     */
+    private Rectangle overlayBounds(String route) {
+        OpacityMask mask = opacityMask(route);
+        return mask == null ? null : mask._bounds;
+    }
+    
+    private static Rectangle union(Rectangle r1, Rectangle r2) {
+        return r1 == null ? r2 : r2 == null ? r1 : r1.union(r2);
     }
     
     /**
@@ -259,23 +908,55 @@ public class MapImage extends Drawing {
      * @return True if the routes do not collide, false otherwise.
      */
     public boolean collide(String... routes) {
-        for (int x = 0; x < getWidth(); x++) {
-            for (int y = 0; y < getHeight(); y++) {
-                String lastOpaque = null;
-                for(String route : routes) {
-                    if (!_mapOverlays.containsKey(route)) {
-                        continue;
-                    }
-                    
-                    int overlayPix = _mapOverlays.get(route).getRGB(x, y);
-                    if ((overlayPix >> 24) != 0) {
-                        if (lastOpaque == null) {
-                            lastOpaque = route;
-                        }
-                        if (route.charAt(0) != lastOpaque.charAt(0)) {
-                            return true;
-                        }
-                    }
+        // group the masks of the known, non-transparent routes by their origin (first letter)
+        TreeMap<Character, List<OpacityMask>> groups = new TreeMap<Character, List<OpacityMask>>();
+        for (String route : routes) {
+            OpacityMask mask = opacityMask(route);
+            if (mask != null && mask._bounds != null) {
+                groups.computeIfAbsent(route.charAt(0), origin -> new ArrayList<OpacityMask>()).add(mask);
+            }
+        }
+        if (groups.size() < 2) {
+            return false;
+        }
+        OpacityMask[][] masks = new OpacityMask[groups.size()][];
+        Rectangle[] bounds = new Rectangle[groups.size()];
+        int g = 0;
+        for (List<OpacityMask> group : groups.values()) {
+            masks[g] = group.toArray(new OpacityMask[group.size()]);
+            for (OpacityMask mask : group) {
+                bounds[g] = bounds[g] == null ? mask._bounds : bounds[g].union(mask._bounds);
+            }
+            g++;
+        }
+        
+        // routes of different origins can only collide where their bounding boxes intersect
+        boolean intersect = false;
+        for (int i = 0; i < bounds.length && !intersect; i++) {
+            for (int j = i + 1; j < bounds.length && !intersect; j++) {
+                intersect = bounds[i].intersects(bounds[j]);
+            }
+        }
+        if (!intersect) {
+            return false;
+        }
+        
+        // then only within the tiles occupied by two different groups
+        int words = masks[0][0]._tiles.length;
+        for (int w = 0; w < words; w++) {
+            long others = 0;
+            long shared = 0;
+            for (OpacityMask[] group : masks) {
+                long occupied = 0;
+                for (OpacityMask mask : group) {
+                    occupied |= mask._tiles[w];
+                }
+                shared |= others & occupied;
+                others |= occupied;
+            }
+            for (; shared != 0; shared &= shared - 1) {
+                if (collide(masks, w * 64 + Long.numberOfTrailingZeros(shared))) {
+                    return true;
                 }
             }
         }
@@ -283,22 +964,54 @@ public class MapImage extends Drawing {
         return false;
     }
     
+    /**
+     * Indicates whether two routes are colliding, as computed when the map was loaded.
+     * This is a table lookup, equivalent to collide(route1, route2).
+     * @param route1 - the name of the first route.
+     * @param route2 - the name of the second route.
+     * @return True if both routes are embedded in this map and collide, false otherwise.
+     * @see #collide(String...)
+     * @see #getConflicts()
+     */
+    public boolean conflicts(String route1, String route2) {
+        Integer index1 = _routeIndex.get(route1);
+        Integer index2 = _routeIndex.get(route2);
+        return index1 != null && index2 != null && _conflicts[index1][index2];
+    }
+    
+    /**
+     * Gets the routes colliding with each route embedded in this map, as computed
+     * when the map was loaded.
+     * @return The read-only map of each route name to the names of the routes it collides with.<br>
+     * e.g.: {"AB"={"CA", "DB"}, "AC"={"BA"}, ...}
+     * @see #conflicts(String, String)
+     */
+    public Map<String, Set<String>> getConflicts() {
+        return _conflictSets;
+    }
+    
     /**
      * Gets the buffered image composing the map with all the requested overlays.
+     * The image is built on the first call, then kept up to date by setOverlays,
+     * such that the same image is returned as long as the map is displayed.
      * @return The bufferd image for the composited map.
      * @see #getOverlays()
      * @see #setOverlays(String...)
      */
     @Override
     public BufferedImage getImage() {
-        BufferedImage image = new BufferedImage(getWidth(),getHeight(),BufferedImage.TYPE_INT_ARGB);
-        Graphics g=image.getGraphics();
-        g.drawImage(_image,0,0,null);
-        for (String overlay : _overlays) {
-            if (_mapOverlays.containsKey(overlay)) {
-                g.drawImage(_mapOverlays.get(overlay),0,0,null);
+        if (_composite == null) {
+            BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+            int[] composite = pixels(image);
+            copyBase(composite, new Rectangle(0, 0, getWidth(), getHeight()));
+            for (String overlay : _overlays) {
+                Rectangle bounds = overlayBounds(overlay);
+                if (bounds != null) {
+                    compositeOver(composite, overlayPixels(overlay), bounds);
+                }
             }
+            _composite = image;
         }
-        return image;
+        return _composite;
     }
 }
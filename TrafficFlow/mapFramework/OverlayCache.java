@@ -0,0 +1,244 @@
+package TrafficFlow.mapFramework;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class bounding the memory used by the decoded route overlays of all the MapImages
+ * sharing it. The cache keeps track of the size of each decoded overlay, in the order
+ * the overlays were last used, and whenever the total goes over the budget it evicts
+ * the least recently used overlays: their MapImage drops their pixels and decodes them
+ * again from their encoded (.png) source on their next use.
+ * <p>
+ * Overlays displayed on their map are pinned and never evicted, such that the budget
+ * may be exceeded by the pinned overlays alone. The cache holds no strong reference
+ * to the MapImages, which are garbage collected along with their overlays as usual.
+ * <br>E.g.: <pre>OverlayCache.getDefault().setBudget(64L &lt;&lt; 20);</pre>
+ * @see MapImage#setOverlays(java.util.Collection)
+ * @see MapImage#load(String, OverlayCache)
+ */
+public class OverlayCache {
+    /**
+     * Default budget, in bytes: a quarter of the maximum heap size.
+     */
+    public static final long BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+    private static final OverlayCache DEFAULT = new OverlayCache(BUDGET);
+
+    /**
+     * Key of an overlay: its MapImage, weakly referenced, and its route.
+     */
+    private static class Key extends WeakReference<MapImage> {
+        private final String _route;
+        private final int _hash;
+
+        Key(MapImage mapImage, String route, ReferenceQueue<MapImage> queue) {
+            super(mapImage, queue);
+            _route = route;
+            _hash = System.identityHashCode(mapImage) * 31 + route.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            MapImage mapImage = get();
+            return mapImage != null && mapImage == ((Key) other).get() && _route.equals(((Key) other)._route);
+        }
+    }
+
+    private long _budget;
+    private long _size;
+    // size of the decoded overlays, from the least to the most recently used
+    private LinkedHashMap<Key, Long> _entries = new LinkedHashMap<Key, Long>(16, 0.75f, true);
+    // number of pins of the pinned overlays, decoded or not
+    private HashMap<Key, Integer> _pins = new HashMap<Key, Integer>();
+    // keys of the garbage collected MapImages
+    private ReferenceQueue<MapImage> _collected = new ReferenceQueue<MapImage>();
+
+    /**
+     * Constructs an empty cache.
+     * @param budget - the number of bytes the decoded overlays may use.
+     */
+    public OverlayCache(long budget) {
+        _budget = budget;
+    }
+
+    /**
+     * Gets the cache shared by all the MapImages by default.
+     * @return the default cache.
+     */
+    public static OverlayCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the number of bytes the decoded overlays may use.
+     * @return the budget of the cache.
+     */
+    public synchronized long getBudget() {
+        return _budget;
+    }
+
+    /**
+     * Sets the number of bytes the decoded overlays may use, evicting overlays
+     * if they use more.
+     * @param budget - the new budget of the cache.
+     */
+    public void setBudget(long budget) {
+        List<Key> evicted;
+        synchronized (this) {
+            _budget = budget;
+            evicted = collect();
+        }
+        evict(evicted);
+    }
+
+    /**
+     * Gets the number of bytes used by the decoded overlays.
+     * @return the size of the cache.
+     */
+    public synchronized long getSize() {
+        purge();
+        return _size;
+    }
+
+    /**
+     * Indicates whether the overlay of a route is decoded and accounted for by this cache.
+     * The overlay is not marked as used, leaving the eviction order unchanged.
+     * @param mapImage - the map of the overlay.
+     * @param route - the route of the overlay.
+     * @return True if the overlay is decoded, false if it was never decoded or was evicted.
+     */
+    public synchronized boolean isCached(MapImage mapImage, String route) {
+        return _entries.containsKey(new Key(mapImage, route, null));
+    }
+
+    /**
+     * Records a newly decoded overlay, evicting the least recently used overlays
+     * if the cache goes over its budget.
+     * @param mapImage - the map of the overlay.
+     * @param route - the route of the overlay.
+     * @param bytes - the size of the overlay.
+     */
+    void put(MapImage mapImage, String route, long bytes) {
+        List<Key> evicted;
+        synchronized (this) {
+            purge();
+            Long previous = _entries.remove(new Key(mapImage, route, null));
+            _entries.put(new Key(mapImage, route, _collected), bytes);
+            _size += bytes - (previous == null ? 0 : previous);
+            evicted = collect();
+        }
+        evict(evicted);
+    }
+
+    /**
+     * Marks a decoded overlay as the most recently used.
+     * @param mapImage - the map of the overlay.
+     * @param route - the route of the overlay.
+     */
+    synchronized void touch(MapImage mapImage, String route) {
+        _entries.get(new Key(mapImage, route, null));
+    }
+
+    /**
+     * Prevents an overlay from being evicted, until it is unpinned as many times
+     * as it was pinned. The overlay is marked as the most recently used.
+     * @param mapImage - the map of the overlay.
+     * @param route - the route of the overlay.
+     */
+    synchronized void pin(MapImage mapImage, String route) {
+        purge();
+        Key key = new Key(mapImage, route, null);
+        _entries.get(key);
+        Integer pins = _pins.get(key);
+        if (pins == null) {
+            _pins.put(new Key(mapImage, route, _collected), 1);
+        } else {
+            _pins.put(key, pins + 1);
+        }
+    }
+
+    /**
+     * Allows an overlay to be evicted again. The overlay is marked as the most recently used.
+     * @param mapImage - the map of the overlay.
+     * @param route - the route of the overlay.
+     */
+    void unpin(MapImage mapImage, String route) {
+        List<Key> evicted;
+        synchronized (this) {
+            Key key = new Key(mapImage, route, null);
+            _entries.get(key);
+            Integer pins = _pins.get(key);
+            if (pins != null && pins > 1) {
+                _pins.put(key, pins - 1);
+            } else if (pins != null) {
+                _pins.remove(key);
+            }
+            evicted = collect();
+        }
+        evict(evicted);
+    }
+
+    /**
+     * Drops the overlays of the garbage collected MapImages.
+     */
+    private void purge() {
+        for (Reference<? extends MapImage> key = _collected.poll(); key != null; key = _collected.poll()) {
+            Long bytes = _entries.remove(key);
+            if (bytes != null) {
+                _size -= bytes;
+            }
+            _pins.remove(key);
+        }
+    }
+
+    /**
+     * Removes the least recently used overlays which are not pinned, until the cache
+     * fits its budget. The caller holds the lock of the cache.
+     * @return the keys of the removed overlays, to be evicted from their MapImage.
+     */
+    private List<Key> collect() {
+        List<Key> evicted = new ArrayList<Key>();
+        Iterator<Map.Entry<Key, Long>> entries = _entries.entrySet().iterator();
+        while (_size > _budget && entries.hasNext()) {
+            Map.Entry<Key, Long> entry = entries.next();
+            if (!_pins.containsKey(entry.getKey())) {
+                entries.remove();
+                _size -= entry.getValue();
+                evicted.add(entry.getKey());
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Drops the pixels of the evicted overlays. This is done without holding the lock
+     * of the cache, as each MapImage locks itself to drop the pixels.
+     */
+    private static void evict(List<Key> evicted) {
+        for (Key key : evicted) {
+            MapImage mapImage = key.get();
+            if (mapImage != null) {
+                mapImage.evict(key._route);
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package TrafficFlow.mapFramework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import Graphs.main.Graph;
+import Graphs.main.GraphStorage;
+
+/**
+ * Class planning the signal phases of an intersection: the routes are split into as few
+ * groups (phases) as possible, such that no two routes of the same phase collide.
+ * <p>
+ * The routes and their conflicts are held as a Graph, each conflict being a pair of
+ * Edges in opposite directions, and the phases are the colors of a coloring of this Graph:
+ * <ul>
+ * <li>the Graph is first colored with DSatur, which colors the routes one at a time, always
+ * picking the route with the most distinctly colored neighbors;</li>
+ * <li>for maps of up to {@value #EXACT_ROUTES} routes, the coloring is then improved by an
+ * exact branch and bound search over bitsets of routes, seeded with a clique of mutually
+ * colliding routes, which is also a lower bound on the number of phases. The search stops
+ * once the coloring is known to be minimum, or after {@value #SEARCH_BUDGET} steps.</li>
+ * </ul>
+ * All ties are broken by route name, such that the same map always gets the same phases.
+ * <p>
+ * Besides the phases, the planner enumerates all the maximal sets of routes which can
+ * run together (see compatibleSets()).
+ * <br>E.g.: <pre>TreeMap&lt;Integer, TreeSet&lt;String&gt;&gt; phases = new PhasePlanner(mapImage).plan();</pre>
+ * @see MapImage#getConflicts()
+ */
+public class PhasePlanner {
+    /**
+     * Maximum number of routes of the maps for which an exact coloring is searched.
+     */
+    public static final int EXACT_ROUTES = 64;
+
+    /**
+     * Maximum number of steps of the exact search.
+     */
+    public static final long SEARCH_BUDGET = 1000000;
+
+    private Graph<String> _conflictGraph;
+    // names of the routes, sorted
+    private String[] _routes;
+    // routes colliding with each route, as bitsets of route indexes
+    private long[][] _adjacency;
+
+    // state of the exact search
+    private int[] _best;
+    private int _bestCount;
+    private int _lowerBound;
+    private long _budget;
+
+    /**
+     * Constructs the planner for the routes of a map.
+     * @param mapImage - the map, with its routes and their conflicts.
+     */
+    public PhasePlanner(MapImage mapImage) {
+        this(mapImage.getConflicts());
+    }
+
+    /**
+     * Constructs the planner for a set of routes.
+     * @param conflicts - the routes colliding with each route, keyed by route name.
+     * Conflicts with routes which are not keys of the map are ignored.
+     */
+    public PhasePlanner(Map<String, Set<String>> conflicts) {
+        _routes = new TreeSet<String>(conflicts.keySet()).toArray(new String[0]);
+        _conflictGraph = new Graph<String>();
+        for (String route : _routes) {
+            _conflictGraph.addNode(route);
+        }
+        for (String route : _routes) {
+            for (String other : conflicts.get(route)) {
+                if (conflicts.containsKey(other) && !other.equals(route)) {
+                    _conflictGraph.addEdge(route, other);
+                    _conflictGraph.addEdge(other, route);
+                }
+            }
+        }
+
+        // read the conflicts back from the Graph, indexing the routes by name
+        GraphStorage storage = _conflictGraph.getStorage();
+        Map<String, Integer> index = new HashMap<String, Integer>();
+        for (int i = 0; i < _routes.length; i++) {
+            index.put(_routes[i], i);
+        }
+        _adjacency = new long[_routes.length][(_routes.length + 63) / 64];
+        for (int i = 0; i < _routes.length; i++) {
+            int id = storage.indexOf(_routes[i]);
+            for (int k = 0; k < storage.outDegree(id); k++) {
+                int j = index.get(storage.getName(storage.outNeighbor(id, k)));
+                _adjacency[i][j / 64] |= 1L << j;
+            }
+        }
+    }
+
+    /**
+     * Gets the conflict Graph of the routes: one Node per route, and an Edge in both
+     * directions between any two routes which collide.
+     * @return the conflict Graph.
+     */
+    public Graph<String> getConflictGraph() {
+        return _conflictGraph;
+    }
+
+    /**
+     * Splits the routes into phases, such that no two routes of the same phase collide.
+     * @return the routes of each phase, keyed by phase number in the range [0, phases - 1].<br>
+     * e.g.: {0={"AB", "AC", "BA"}, 1={"CA", "CB"}, ...}
+     */
+    public TreeMap<Integer, TreeSet<String>> plan() {
+        int[] colors = dsatur();
+        if (_routes.length > 0 && _routes.length <= EXACT_ROUTES) {
+            colors = exact(colors);
+        }
+
+        TreeMap<Integer, TreeSet<String>> phases = new TreeMap<Integer, TreeSet<String>>();
+        for (int i = 0; i < _routes.length; i++) {
+            phases.computeIfAbsent(colors[i], phase -> new TreeSet<String>()).add(_routes[i]);
+        }
+        return phases;
+    }
+
+    /**
+     * Enumerates all the maximal sets of compatible routes: sets of routes of which no two
+     * collide, and to which no other route can be added. Each phase of the plan is part of
+     * at least one of them, and the other routes of such a set can run as "bonus" routes
+     * during the phase.
+     * <p>
+     * The sets are the maximal cliques of the compatibility relation (the complement of
+     * the conflict Graph), enumerated by Bron-Kerbosch with pivoting over bitsets of routes.
+     * @return the maximal sets of compatible routes, in a deterministic order, each fit
+     * for MapImage.setOverlays.<br>
+     * e.g.: [{"AB", "AC", "BA"}, {"AB", "CA"}, ...]
+     * @see MapImage#setOverlays(java.util.Collection)
+     */
+    public List<TreeSet<String>> compatibleSets() {
+        int n = _routes.length;
+        int words = (n + 63) / 64;
+        long[][] compatible = new long[n][words];
+        for (int i = 0; i < n; i++) {
+            for (int w = 0; w < words; w++) {
+                compatible[i][w] = ~_adjacency[i][w];
+            }
+            compatible[i][i / 64] &= ~(1L << i);
+            if (n % 64 != 0) {
+                compatible[i][words - 1] &= (1L << n) - 1;
+            }
+        }
+        long[] candidates = new long[words];
+        for (int i = 0; i < n; i++) {
+            candidates[i / 64] |= 1L << i;
+        }
+        List<TreeSet<String>> sets = new ArrayList<TreeSet<String>>();
+        if (n > 0) {
+            bronKerbosch(compatible, new int[n], 0, candidates, new long[words], sets);
+        }
+        return sets;
+    }
+
+    /**
+     * Reports the maximal cliques extending a clique, with the candidates extending it.
+     * @param compatible - the routes compatible with each route, as bitsets.
+     * @param clique - the indexes of the routes in the clique.
+     * @param size - the number of routes in the clique.
+     * @param candidates - the routes which may extend the clique, as a bitset.
+     * @param excluded - the routes which would extend the clique, but whose cliques
+     * were already reported, as a bitset.
+     * @param sets - receives the maximal cliques.
+     */
+    private void bronKerbosch(long[][] compatible, int[] clique, int size, long[] candidates, long[] excluded,
+            List<TreeSet<String>> sets) {
+        int words = candidates.length;
+        // pivot on the route compatible with the most candidates, skipping these candidates
+        int pivot = -1;
+        int pivotCount = -1;
+        for (int w = 0; w < words; w++) {
+            for (long bits = candidates[w] | excluded[w]; bits != 0; bits &= bits - 1) {
+                int u = w * 64 + Long.numberOfTrailingZeros(bits);
+                int count = 0;
+                for (int v = 0; v < words; v++) {
+                    count += Long.bitCount(candidates[v] & compatible[u][v]);
+                }
+                if (count > pivotCount) {
+                    pivot = u;
+                    pivotCount = count;
+                }
+            }
+        }
+        if (pivot < 0) {
+            TreeSet<String> set = new TreeSet<String>();
+            for (int i = 0; i < size; i++) {
+                set.add(_routes[clique[i]]);
+            }
+            sets.add(set);
+            return;
+        }
+
+        for (int w = 0; w < words; w++) {
+            for (long bits = candidates[w] & ~compatible[pivot][w]; bits != 0; bits &= bits - 1) {
+                int v = w * 64 + Long.numberOfTrailingZeros(bits);
+                long[] nextCandidates = new long[words];
+                long[] nextExcluded = new long[words];
+                for (int k = 0; k < words; k++) {
+                    nextCandidates[k] = candidates[k] & compatible[v][k];
+                    nextExcluded[k] = excluded[k] & compatible[v][k];
+                }
+                clique[size] = v;
+                bronKerbosch(compatible, clique, size + 1, nextCandidates, nextExcluded, sets);
+                candidates[w] &= ~(1L << v);
+                excluded[w] |= 1L << v;
+            }
+        }
+    }
+
+    private boolean adjacent(int i, int j) {
+        return (_adjacency[i][j / 64] & (1L << j)) != 0;
+    }
+
+    private int degree(int i) {
+        int degree = 0;
+        for (long word : _adjacency[i]) {
+            degree += Long.bitCount(word);
+        }
+        return degree;
+    }
+
+    /**
+     * Colors the routes with DSatur: the next route to color is the one with the most
+     * distinct colors among its neighbors, then the one with the most neighbors, and
+     * it gets the lowest color none of its neighbors has.
+     * @return the color of each route.
+     */
+    private int[] dsatur() {
+        int n = _routes.length;
+        int[] colors = new int[n];
+        Arrays.fill(colors, -1);
+        BitSet[] saturation = new BitSet[n];
+        for (int i = 0; i < n; i++) {
+            saturation[i] = new BitSet();
+        }
+        for (int step = 0; step < n; step++) {
+            int next = -1;
+            for (int i = 0; i < n; i++) {
+                if (colors[i] < 0 && (next < 0
+                        || saturation[i].cardinality() > saturation[next].cardinality()
+                        || (saturation[i].cardinality() == saturation[next].cardinality() && degree(i) > degree(next)))) {
+                    next = i;
+                }
+            }
+            colors[next] = saturation[next].nextClearBit(0);
+            for (int j = 0; j < n; j++) {
+                if (adjacent(next, j)) {
+                    saturation[j].set(colors[next]);
+                }
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Finds a clique of mutually colliding routes, greedily from each route in turn.
+     * @return the indexes of the routes in the largest clique found.
+     */
+    private int[] clique() {
+        int n = _routes.length;
+        int[] best = new int[0];
+        int[] clique = new int[n];
+        for (int start = 0; start < n; start++) {
+            int size = 0;
+            clique[size++] = start;
+            for (int j = 0; j < n; j++) {
+                boolean all = j != start;
+                for (int k = 0; k < size && all; k++) {
+                    all = adjacent(clique[k], j);
+                }
+                if (all) {
+                    clique[size++] = j;
+                }
+            }
+            if (size > best.length) {
+                best = Arrays.copyOf(clique, size);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Searches a coloring with fewer colors than the given one, with branch and bound.
+     * The routes of the clique get distinct colors up front, which breaks the symmetry
+     * between the colors; the other routes are colored in DSatur order, trying each
+     * color already used, then a new color as long as it beats the best coloring found.
+     * @param colors - the coloring to be improved.
+     * @return the best coloring found.
+     */
+    private int[] exact(int[] colors) {
+        int n = _routes.length;
+        int[] clique = clique();
+        _best = colors;
+        _bestCount = Arrays.stream(colors).max().getAsInt() + 1;
+        _lowerBound = clique.length;
+        _budget = SEARCH_BUDGET;
+
+        long[] adjacency = new long[n];
+        for (int i = 0; i < n; i++) {
+            adjacency[i] = _adjacency[i][0];
+        }
+        int[] current = new int[n];
+        Arrays.fill(current, -1);
+        long[] classes = new long[n];
+        for (int c = 0; c < clique.length; c++) {
+            current[clique[c]] = c;
+            classes[c] |= 1L << clique[c];
+        }
+        search(adjacency, current, classes, clique.length, clique.length);
+        return _best;
+    }
+
+    /**
+     * Colors one more route and recurses over the remaining ones.
+     * @param adjacency - the routes colliding with each route, as a bitset.
+     * @param colors - the color of each route, -1 for the routes not colored yet.
+     * @param classes - the routes of each color, as a bitset.
+     * @param colored - the number of routes colored.
+     * @param used - the number of colors used.
+     */
+    private void search(long[] adjacency, int[] colors, long[] classes, int colored, int used) {
+        if (used >= _bestCount || _bestCount == _lowerBound || _budget-- <= 0) {
+            return;
+        }
+        int n = colors.length;
+        if (colored == n) {
+            _best = colors.clone();
+            _bestCount = used;
+            return;
+        }
+
+        int next = -1;
+        int nextSaturation = -1;
+        for (int i = 0; i < n; i++) {
+            if (colors[i] >= 0) {
+                continue;
+            }
+            int saturation = 0;
+            for (int c = 0; c < used; c++) {
+                saturation += (classes[c] & adjacency[i]) != 0 ? 1 : 0;
+            }
+            if (saturation > nextSaturation || (saturation == nextSaturation
+                    && Long.bitCount(adjacency[i]) > Long.bitCount(adjacency[next]))) {
+                next = i;
+                nextSaturation = saturation;
+            }
+        }
+
+        for (int c = 0; c <= used && c < _bestCount - 1; c++) {
+            if ((classes[c] & adjacency[next]) == 0) {
+                colors[next] = c;
+                classes[c] |= 1L << next;
+                search(adjacency, colors, classes, colored + 1, Math.max(used, c + 1));
+                classes[c] &= ~(1L << next);
+                colors[next] = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package TrafficFlow.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import TrafficFlow.mapFramework.MapImage;
+
+public class MapImage_tests {
+
+    private int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Reads the overlays of an enhanced .jpg map file, bypassing MapImage: the file ends
+     * with the JSON serialized overlays and the length of the base map image.
+     * @return the non-transparent pixels of each route, in the order of the routes.
+     */
+    private TreeMap<String, boolean[]> opaquePixels(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int offset = new BigInteger(Arrays.copyOfRange(bytes, bytes.length - 4, bytes.length)).intValue();
+        JsonObject overlays = JsonParser.parseString(new String(bytes, offset, bytes.length - 4 - offset))
+                .getAsJsonObject().getAsJsonObject("_mapOverlaysRaw");
+        TreeMap<String, boolean[]> opaque = new TreeMap<String, boolean[]>();
+        for (String route : overlays.keySet()) {
+            BufferedImage overlay = ImageIO.read(new ByteArrayInputStream(
+                    Base64.getDecoder().decode(overlays.get(route).getAsString())));
+            int[] pixels = pixels(overlay);
+            boolean[] routeOpaque = new boolean[pixels.length];
+            for (int i = 0; i < pixels.length; i++) {
+                routeOpaque[i] = (pixels[i] >> 24) != 0;
+            }
+            opaque.put(route, routeOpaque);
+        }
+        return opaque;
+    }
+
+    /**
+     * Checks pixel by pixel if any two of the given routes of different origins (first letter)
+     * are both non-transparent, the unknown routes being ignored.
+     */
+    private boolean bruteForceCollide(Map<String, boolean[]> opaque, String... routes) {
+        List<boolean[]> masks = new ArrayList<boolean[]>();
+        List<Character> origins = new ArrayList<Character>();
+        for (String route : routes) {
+            if (opaque.containsKey(route)) {
+                masks.add(opaque.get(route));
+                origins.add(route.charAt(0));
+            }
+        }
+        for (int i = 0; i < masks.size(); i++) {
+            for (int j = i + 1; j < masks.size(); j++) {
+                if (origins.get(i) != origins.get(j)) {
+                    for (int p = 0; p < masks.get(i).length; p++) {
+                        if (masks.get(i)[p] && masks.get(j)[p]) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    //____ COLLISIONS ____
+    /** collide() finds the same collisions as a pixel by pixel scan of the overlays, for
+     * every pair of routes of the shipped maps and for sets of routes of the same or
+     * different origins.
+     */
+    @Test
+    public void test_collide() throws IOException {
+        Random random = new Random(41);
+        for (File file : new File("TrafficFlow/maps").listFiles()) {
+            MapImage mapImage = MapImage.load(file.getPath());
+            TreeMap<String, boolean[]> opaque = opaquePixels(file);
+            String[] routes = opaque.keySet().toArray(new String[0]);
+            assertEquals(opaque.keySet(), mapImage.getRoutes());
+            for (String route1 : routes) {
+                for (String route2 : routes) {
+                    assertEquals(file + ": " + route1 + " " + route2,
+                            bruteForceCollide(opaque, route1, route2), mapImage.collide(route1, route2));
+                }
+            }
+
+            // all the routes of each origin, then with one route of another origin
+            Map<Character, List<String>> origins = new TreeMap<Character, List<String>>();
+            for (String route : routes) {
+                origins.computeIfAbsent(route.charAt(0), origin -> new ArrayList<String>()).add(route);
+            }
+            for (List<String> group : origins.values()) {
+                assertFalse(mapImage.collide(group.toArray(new String[0])));
+                for (String other : routes) {
+                    List<String> mixed = new ArrayList<String>(group);
+                    mixed.add(random.nextInt(mixed.size() + 1), other);
+                    String[] set = mixed.toArray(new String[0]);
+                    assertEquals(file + ": " + mixed, bruteForceCollide(opaque, set), mapImage.collide(set));
+                }
+            }
+            for (int n = 0; n < 50; n++) {
+                String[] set = new String[2 + random.nextInt(4)];
+                for (int i = 0; i < set.length; i++) {
+                    set[i] = random.nextInt(10) == 0 ? "ZZ" : routes[random.nextInt(routes.length)];
+                }
+                assertEquals(file + ": " + Arrays.toString(set), bruteForceCollide(opaque, set), mapImage.collide(set));
+            }
+            assertFalse(mapImage.collide());
+            assertFalse(mapImage.collide(routes[0]));
+        }
+    }
+
+    /**
+     * Writes an enhanced .jpg map file of the given overlays: the base map image, followed
+     * by the JSON serialized overlays and by the length of the base map image.
+     */
+    private void writeMapFile(Path file, BufferedImage baseMap, Map<String, BufferedImage> overlays) throws IOException {
+        ByteArrayOutputStream baseBytes = new ByteArrayOutputStream();
+        ImageIO.write(baseMap, "jpg", baseBytes);
+        JsonObject rawOverlays = new JsonObject();
+        for (Map.Entry<String, BufferedImage> overlay : overlays.entrySet()) {
+            ByteArrayOutputStream overlayBytes = new ByteArrayOutputStream();
+            ImageIO.write(overlay.getValue(), "png", overlayBytes);
+            rawOverlays.addProperty(overlay.getKey(), Base64.getEncoder().encodeToString(overlayBytes.toByteArray()));
+        }
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("_mapName", "Synthetic");
+        metadata.add("_mapOverlaysRaw", rawOverlays);
+        ByteArrayOutputStream mapBytes = new ByteArrayOutputStream();
+        mapBytes.write(baseBytes.toByteArray());
+        mapBytes.write(metadata.toString().getBytes());
+        mapBytes.write(ByteBuffer.allocate(4).putInt(baseBytes.size()).array());
+        Files.write(file, mapBytes.toByteArray());
+    }
+
+    /**
+     * Checks the conflicts of each route are the routes it collides with.
+     */
+    private void assertConflicts(MapImage mapImage) {
+        Map<String, Set<String>> conflicts = mapImage.getConflicts();
+        assertEquals(mapImage.getRoutes(), conflicts.keySet());
+        for (String route1 : mapImage.getRoutes()) {
+            for (String route2 : mapImage.getRoutes()) {
+                boolean collide = mapImage.collide(route1, route2);
+                assertEquals(route1 + " " + route2, collide, conflicts.get(route1).contains(route2));
+                assertEquals(route1 + " " + route2, collide, mapImage.conflicts(route1, route2));
+            }
+        }
+    }
+
+    //____ CONFLICT MATRIX ____
+    /** The conflict matrix built in parallel strips at load holds the pairs of routes
+     * colliding on the shipped maps, and on a map of more than 64 routes.
+     */
+    @Test
+    public void test_conflicts() throws IOException {
+        for (File file : new File("TrafficFlow/maps").listFiles()) {
+            assertConflicts(MapImage.load(file.getPath()));
+        }
+
+        // 90 routes of 5 origins, each covering a few random rectangles of the map,
+        // some overlays being smaller than the map
+        Random random = new Random(44);
+        int width = 120;
+        int height = 200;
+        TreeMap<String, BufferedImage> overlays = new TreeMap<String, BufferedImage>();
+        TreeMap<String, boolean[]> opaque = new TreeMap<String, boolean[]>();
+        for (int r = 0; r < 90; r++) {
+            String route = (char) ('A' + r % 5) + String.format("%02d", r);
+            int overlayHeight = r % 7 == 0 ? height / 2 : height;
+            BufferedImage overlay = new BufferedImage(width, overlayHeight, BufferedImage.TYPE_INT_ARGB);
+            boolean[] routeOpaque = new boolean[width * height];
+            int color = 0xFF000000 | random.nextInt(0x1000000);
+            for (int n = 0; n < 3; n++) {
+                int x0 = random.nextInt(width);
+                int y0 = random.nextInt(overlayHeight);
+                for (int y = y0; y < Math.min(overlayHeight, y0 + 1 + random.nextInt(12)); y++) {
+                    for (int x = x0; x < Math.min(width, x0 + 1 + random.nextInt(12)); x++) {
+                        overlay.setRGB(x, y, color);
+                        routeOpaque[y * width + x] = true;
+                    }
+                }
+            }
+            overlays.put(route, overlay);
+            opaque.put(route, routeOpaque);
+        }
+        Path directory = Files.createTempDirectory("maps");
+        Path file = directory.resolve("Synthetic.jpg");
+        Path indexedFile = directory.resolve("Synthetic_indexed.jpg");
+        try {
+            writeMapFile(file, new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), overlays);
+            MapImage mapImage = MapImage.load(file.toString());
+            assertEquals(overlays.keySet(), mapImage.getRoutes());
+            assertConflicts(mapImage);
+            int conflicting = 0;
+            for (String route1 : opaque.keySet()) {
+                for (String route2 : opaque.keySet()) {
+                    boolean collide = bruteForceCollide(opaque, route1, route2);
+                    assertEquals(route1 + " " + route2, collide, mapImage.conflicts(route1, route2));
+                    conflicting += collide ? 1 : 0;
+                }
+            }
+            assertTrue(conflicting > 0);
+
+            // the conflicts past the first 64 routes are kept by the indexed file
+            mapImage.saveIndexed(indexedFile.toString());
+            assertEquals(mapImage.getConflicts(), MapImage.load(indexedFile.toString()).getConflicts());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(indexedFile);
+            Files.delete(directory);
+        }
+    }
+
+    //____ COMPOSITING ____
+    /** The composited map updated in place by a sequence of setOverlays() calls (adding,
+     * removing, reordering routes, and back to the same routes) has the same pixels as
+     * the composited map of a freshly loaded map, built at once.
+     */
+    @Test
+    public void test_setOverlays() throws IOException {
+        for (String file : new String[] {"TrafficFlow/maps/Loyal.jpg", "TrafficFlow/maps/Sheridan.jpg"}) {
+            MapImage mapImage = MapImage.load(file);
+            String[] routes = mapImage.getRoutes().toArray(new String[0]);
+            String[][] steps = {
+                    {},
+                    {routes[0]},
+                    {routes[0], routes[1], routes[2], routes[3]},
+                    {routes[3], routes[2], routes[1], routes[0]},
+                    {routes[1], routes[3]},
+                    {routes[1], routes[3], routes[4], routes[5], routes[6]},
+                    {routes[6], routes[0], routes[4]},
+                    {routes[6], routes[0], routes[4]},
+                    routes,
+                    {routes[2]},
+                    {},
+                    {routes[0], routes[1], routes[2], routes[3]},
+            };
+            BufferedImage image = mapImage.getImage();
+            for (String[] step : steps) {
+                mapImage.setOverlays(step);
+                assertEquals(new TreeSet<String>(Arrays.asList(step)), new TreeSet<String>(mapImage.getOverlays()));
+                assertTrue(image == mapImage.getImage());
+
+                MapImage expected = MapImage.load(file);
+                expected.setOverlays(mapImage.getOverlays());
+                assertTrue(file + ": " + Arrays.toString(step),
+                        Arrays.equals(pixels(expected.getImage()), pixels(mapImage.getImage())));
+            }
+        }
+    }
+
+    //____ FILE IO ____
+    /** A map loaded from an indexed file can be saved back over that same file, in
+     * both formats, and keeps decoding its overlays from the content it was loaded from.
+     */
+    @Test
+    public void test_saveInPlace() throws IOException {
+        MapImage original = MapImage.load("TrafficFlow/maps/Loyal.jpg");
+        Path directory = Files.createTempDirectory("maps");
+        String file = directory.resolve("Loyal.jpg").toString();
+        try {
+            original.saveIndexed(file);
+            MapImage indexed = MapImage.load(file);
+            MapImage expected = MapImage.load(file);
+            expected.setOverlays(original.getRoutes());
+            int[] expectedPixels = pixels(expected.getImage());
+            indexed.saveIndexed(file);
+            MapImage reloaded = MapImage.load(file);
+            assertEquals(original.getRoutes(), reloaded.getRoutes());
+            assertEquals(original.getConflicts(), reloaded.getConflicts());
+
+            indexed.save(file);
+            reloaded = MapImage.load(file);
+            assertEquals(original.getRoutes(), reloaded.getRoutes());
+            assertEquals(original.getConflicts(), reloaded.getConflicts());
+
+            // the overlays of the first indexed map are still decoded from its former file
+            indexed.setOverlays(original.getRoutes());
+            assertTrue(Arrays.equals(expectedPixels, pixels(indexed.getImage())));
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path left : files.toArray(Path[]::new)) {
+                    Files.delete(left);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /** A saved map file gets the permissions of a new file, or keeps the permissions
+     * of the file it replaces.
+     */
+    @Test
+    public void test_savePermissions() throws IOException {
+        MapImage original = MapImage.load("TrafficFlow/maps/Loyal.jpg");
+        Path directory = Files.createTempDirectory("maps");
+        Path file = directory.resolve("Loyal.jpg");
+        Path expected = directory.resolve("expected");
+        try {
+            if (!Files.getFileStore(directory).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                return;
+            }
+            Files.createFile(expected);
+            original.save(file.toString());
+            assertEquals(Files.getPosixFilePermissions(expected), Files.getPosixFilePermissions(file));
+            Files.delete(file);
+            original.saveIndexed(file.toString());
+            assertEquals(Files.getPosixFilePermissions(expected), Files.getPosixFilePermissions(file));
+
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r-----"));
+            original.saveIndexed(file.toString());
+            assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+            original.save(file.toString());
+            assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(expected);
+            Files.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package TrafficFlow.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import TrafficFlow.mapFramework.MapImage;
+import TrafficFlow.mapFramework.OverlayCache;
+
+public class OverlayCache_tests {
+
+    private OverlayCache _cache;
+    private Path _directory;
+    private String _file;
+    private long _overlaySize;
+
+    /**
+     * Saves an indexed map, which decodes its overlays on first use, and creates an
+     * empty cache for the maps loaded by the test.
+     */
+    @Before
+    public void setUp() throws IOException {
+        MapImage original = MapImage.load("TrafficFlow/maps/Loyal.jpg");
+        _directory = Files.createTempDirectory("maps");
+        _file = _directory.resolve("Loyal.jpg").toString();
+        original.saveIndexed(_file);
+        _overlaySize = 4L * original.getWidth() * original.getHeight();
+        _cache = new OverlayCache(Long.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(_file));
+        Files.delete(_directory);
+    }
+
+    private String[] routes(MapImage mapImage) {
+        return mapImage.getRoutes().toArray(new String[0]);
+    }
+
+    /**
+     * Displays a route on its own, then hides it, leaving its overlay decoded but not pinned.
+     * @return the pixels of the map displaying the route.
+     */
+    private int[] use(MapImage mapImage, String route) {
+        mapImage.setOverlays(route);
+        BufferedImage image = mapImage.getImage();
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        mapImage.setOverlays();
+        return pixels;
+    }
+
+    //____ EVICTION ____
+    /** The least recently used overlays are evicted first once the cache goes over its budget,
+     * and are decoded again, unchanged, on their next use.
+     */
+    @Test
+    public void test_leastRecentlyUsed() throws IOException {
+        MapImage mapImage = MapImage.load(_file, _cache);
+        String[] routes = routes(mapImage);
+        _cache.setBudget(2 * _overlaySize);
+        assertFalse(_cache.isCached(mapImage, routes[0]));
+
+        int[] pixels = use(mapImage, routes[0]);
+        use(mapImage, routes[1]);
+        assertTrue(_cache.isCached(mapImage, routes[0]));
+        assertTrue(_cache.isCached(mapImage, routes[1]));
+
+        // routes[0] is used again, so routes[1] is the least recently used
+        use(mapImage, routes[0]);
+        use(mapImage, routes[2]);
+        assertTrue(_cache.isCached(mapImage, routes[0]));
+        assertFalse(_cache.isCached(mapImage, routes[1]));
+        assertTrue(_cache.isCached(mapImage, routes[2]));
+
+        use(mapImage, routes[1]);
+        assertFalse(_cache.isCached(mapImage, routes[0]));
+        assertTrue(Arrays.equals(pixels, use(mapImage, routes[0])));
+        assertTrue(_cache.isCached(mapImage, routes[0]));
+        assertFalse(_cache.isCached(mapImage, routes[2]));
+        assertEquals(2 * _overlaySize, _cache.getSize());
+
+        // querying the cache does not mark an overlay as used
+        assertTrue(_cache.isCached(mapImage, routes[1]));
+        use(mapImage, routes[3]);
+        assertFalse(_cache.isCached(mapImage, routes[1]));
+    }
+
+    /** The overlays displayed on their map are never evicted, even over the budget,
+     * and may be evicted again once hidden.
+     */
+    @Test
+    public void test_pinning() throws IOException {
+        MapImage mapImage = MapImage.load(_file, _cache);
+        String[] routes = routes(mapImage);
+        _cache.setBudget(0);
+        mapImage.setOverlays(routes[0], routes[1]);
+        mapImage.getImage();
+        assertTrue(_cache.isCached(mapImage, routes[0]));
+        assertTrue(_cache.isCached(mapImage, routes[1]));
+        assertEquals(2 * _overlaySize, _cache.getSize());
+
+        mapImage.setOverlays(routes[0], routes[1], routes[2]);
+        assertTrue(_cache.isCached(mapImage, routes[2]));
+        mapImage.setOverlays(routes[0], routes[1]);
+        assertFalse(_cache.isCached(mapImage, routes[2]));
+        assertTrue(_cache.isCached(mapImage, routes[0]));
+        assertTrue(_cache.isCached(mapImage, routes[1]));
+
+        mapImage.setOverlays(routes[1]);
+        assertFalse(_cache.isCached(mapImage, routes[0]));
+        assertTrue(_cache.isCached(mapImage, routes[1]));
+        mapImage.setOverlays();
+        assertFalse(_cache.isCached(mapImage, routes[1]));
+        assertEquals(0, _cache.getSize());
+    }
+
+    /** Shrinking the budget evicts the least recently used overlays down to the new budget.
+     */
+    @Test
+    public void test_budgetShrink() throws IOException {
+        MapImage mapImage = MapImage.load(_file, _cache);
+        String[] routes = routes(mapImage);
+        for (int i = 0; i < 4; i++) {
+            use(mapImage, routes[i]);
+        }
+        assertEquals(4 * _overlaySize, _cache.getSize());
+
+        _cache.setBudget(2 * _overlaySize + _overlaySize / 2);
+        assertEquals(2 * _overlaySize, _cache.getSize());
+        assertFalse(_cache.isCached(mapImage, routes[0]));
+        assertFalse(_cache.isCached(mapImage, routes[1]));
+        assertTrue(_cache.isCached(mapImage, routes[2]));
+        assertTrue(_cache.isCached(mapImage, routes[3]));
+
+        _cache.setBudget(0);
+        assertEquals(0, _cache.getSize());
+        assertFalse(_cache.isCached(mapImage, routes[3]));
+    }
+
+    /** The overlays of the garbage collected maps are dropped from the cache.
+     */
+    @Test
+    public void test_purgeCollected() throws IOException, InterruptedException {
+        useAndDrop();
+        for (int i = 0; i < 250 && _cache.getSize() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(0, _cache.getSize());
+    }
+
+    private void useAndDrop() throws IOException {
+        MapImage mapImage = MapImage.load(_file, _cache);
+        for (String route : routes(mapImage)) {
+            use(mapImage, route);
+        }
+        assertEquals(mapImage.getRoutes().size() * _overlaySize, _cache.getSize());
+    }
+
+    //____ CONCURRENCY ____
+    /** Maps decoding their overlays from several threads, each decode evicting the
+     * overlays of the other map, do not deadlock.
+     */
+    @Test
+    public void test_concurrentMaps() throws Exception {
+        // the overlay decoded by one map stays cached until the other map evicts it
+        _cache.setBudget(_overlaySize);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int n = 0; n < 20; n++) {
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < 2; t++) {
+                MapImage mapImage = MapImage.load(_file, _cache);
+                String[] routes = routes(mapImage);
+                Thread thread = new Thread(() -> {
+                    try {
+                        mapImage.collide(routes);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                thread.setDaemon(true);
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join(30000);
+                if (thread.isAlive()) {
+                    fail("Deadlock between maps evicting each other's overlays!");
+                }
+            }
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
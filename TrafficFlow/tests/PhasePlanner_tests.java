@@ -0,0 +1,293 @@
+package TrafficFlow.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import TrafficFlow.mapFramework.PhasePlanner;
+
+public class PhasePlanner_tests {
+
+    /**
+     * Builds the conflicts of routes "R00", "R01", ... from the pairs of colliding routes.
+     */
+    private Map<String, Set<String>> conflicts(int routes, int[][] pairs) {
+        Map<String, Set<String>> conflicts = new HashMap<String, Set<String>>();
+        for (int i = 0; i < routes; i++) {
+            conflicts.put(route(i), new TreeSet<String>());
+        }
+        for (int[] pair : pairs) {
+            conflicts.get(route(pair[0])).add(route(pair[1]));
+            conflicts.get(route(pair[1])).add(route(pair[0]));
+        }
+        return conflicts;
+    }
+
+    private String route(int i) {
+        return String.format("R%02d", i);
+    }
+
+    /**
+     * Builds the conflicts of random routes, each pair colliding with the given probability.
+     */
+    private Map<String, Set<String>> randomConflicts(Random random, int routes, double density) {
+        List<int[]> pairs = new ArrayList<int[]>();
+        for (int i = 0; i < routes; i++) {
+            for (int j = i + 1; j < routes; j++) {
+                if (random.nextDouble() < density) {
+                    pairs.add(new int[] {i, j});
+                }
+            }
+        }
+        return conflicts(routes, pairs.toArray(new int[0][]));
+    }
+
+    /**
+     * Checks every route is in exactly one phase, no two routes of a phase collide,
+     * and the phases are numbered from 0.
+     */
+    private void assertValidPlan(Map<String, Set<String>> conflicts, TreeMap<Integer, TreeSet<String>> phases) {
+        Set<String> planned = new TreeSet<String>();
+        int expected = 0;
+        for (Map.Entry<Integer, TreeSet<String>> phase : phases.entrySet()) {
+            assertEquals(expected++, (int) phase.getKey());
+            for (String route : phase.getValue()) {
+                assertTrue(planned.add(route));
+                for (String other : phase.getValue()) {
+                    assertFalse(conflicts.get(route).contains(other));
+                }
+            }
+        }
+        assertEquals(conflicts.keySet(), planned);
+    }
+
+    /**
+     * Computes the minimum number of phases by trying all the colorings with k colors,
+     * for k = 1, 2, ...
+     */
+    private int chromaticNumber(Map<String, Set<String>> conflicts) {
+        String[] routes = new TreeSet<String>(conflicts.keySet()).toArray(new String[0]);
+        for (int k = 1; ; k++) {
+            if (colorable(conflicts, routes, new int[routes.length], 0, k)) {
+                return k;
+            }
+        }
+    }
+
+    private boolean colorable(Map<String, Set<String>> conflicts, String[] routes, int[] colors, int next, int k) {
+        if (next == routes.length) {
+            return true;
+        }
+        for (int color = 0; color < k; color++) {
+            boolean free = true;
+            for (int i = 0; i < next && free; i++) {
+                free = colors[i] != color || !conflicts.get(routes[next]).contains(routes[i]);
+            }
+            if (free) {
+                colors[next] = color;
+                if (colorable(conflicts, routes, colors, next + 1, k)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    //____ PHASE PLANNING ____
+    /** Routes colliding in an odd cycle cannot alternate between two phases.
+     */
+    @Test
+    public void test_oddCycle() {
+        Map<String, Set<String>> conflicts = conflicts(5, new int[][] {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 0}});
+        TreeMap<Integer, TreeSet<String>> phases = new PhasePlanner(conflicts).plan();
+        assertValidPlan(conflicts, phases);
+        assertEquals(3, phases.size());
+
+        conflicts = conflicts(6, new int[][] {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {5, 0}});
+        assertEquals(2, new PhasePlanner(conflicts).plan().size());
+    }
+
+    /** Routes which all collide with each other each get their own phase, while
+     * routes colliding with none share a single phase.
+     */
+    @Test
+    public void test_clique() {
+        for (int k = 1; k <= 8; k++) {
+            List<int[]> pairs = new ArrayList<int[]>();
+            for (int i = 0; i < k; i++) {
+                for (int j = i + 1; j < k; j++) {
+                    pairs.add(new int[] {i, j});
+                }
+            }
+            Map<String, Set<String>> conflicts = conflicts(k, pairs.toArray(new int[0][]));
+            TreeMap<Integer, TreeSet<String>> phases = new PhasePlanner(conflicts).plan();
+            assertValidPlan(conflicts, phases);
+            assertEquals(k, phases.size());
+        }
+        assertEquals(1, new PhasePlanner(conflicts(8, new int[0][])).plan().size());
+        assertEquals(0, new PhasePlanner(conflicts(0, new int[0][])).plan().size());
+    }
+
+    /** The plan of random routes is valid, and uses the minimum number of phases
+     * found by brute force.
+     */
+    @Test
+    public void test_minimumPlan() {
+        Random random = new Random(45);
+        for (int n = 0; n < 200; n++) {
+            Map<String, Set<String>> conflicts = randomConflicts(random, 1 + random.nextInt(10), random.nextDouble());
+            TreeMap<Integer, TreeSet<String>> phases = new PhasePlanner(conflicts).plan();
+            assertValidPlan(conflicts, phases);
+            assertEquals(chromaticNumber(conflicts), phases.size());
+        }
+        for (int routes : new int[] {40, 64, 65, 90}) {
+            Map<String, Set<String>> conflicts = randomConflicts(random, routes, 0.3);
+            assertValidPlan(conflicts, new PhasePlanner(conflicts).plan());
+        }
+    }
+
+    /** The same routes always get the same plan, regardless of the order the
+     * conflicts are given in.
+     */
+    @Test
+    public void test_deterministicPlan() {
+        Map<String, Set<String>> conflicts = randomConflicts(new Random(7), 30, 0.4);
+        Map<String, Set<String>> reversed = new LinkedHashMap<String, Set<String>>();
+        for (String route : new TreeSet<String>(conflicts.keySet()).descendingSet()) {
+            reversed.put(route, new TreeSet<String>(conflicts.get(route)).descendingSet());
+        }
+        TreeMap<Integer, TreeSet<String>> phases = new PhasePlanner(conflicts).plan();
+        assertEquals(phases, new PhasePlanner(conflicts).plan());
+        assertEquals(phases, new PhasePlanner(reversed).plan());
+    }
+
+    /**
+     * Checks each set holds no two colliding routes, no other route can be added
+     * to it, and no set is listed twice.
+     */
+    private void assertMaximalSets(Map<String, Set<String>> conflicts, List<TreeSet<String>> sets) {
+        assertEquals(sets.size(), new HashSet<TreeSet<String>>(sets).size());
+        for (TreeSet<String> set : sets) {
+            for (String route : set) {
+                for (String other : set) {
+                    assertFalse(conflicts.get(route).contains(other));
+                }
+            }
+            for (String route : conflicts.keySet()) {
+                if (!set.contains(route)) {
+                    boolean collides = false;
+                    for (String other : set) {
+                        collides |= conflicts.get(route).contains(other);
+                    }
+                    assertTrue(collides);
+                }
+            }
+        }
+    }
+
+    /**
+     * Enumerates the maximal sets of compatible routes by trying all the subsets of routes.
+     */
+    private Set<TreeSet<String>> bruteForceSets(Map<String, Set<String>> conflicts) {
+        String[] routes = new TreeSet<String>(conflicts.keySet()).toArray(new String[0]);
+        List<TreeSet<String>> compatible = new ArrayList<TreeSet<String>>();
+        for (int mask = 0; mask < (1 << routes.length); mask++) {
+            TreeSet<String> set = new TreeSet<String>();
+            boolean valid = true;
+            for (int i = 0; i < routes.length && valid; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    for (String other : set) {
+                        valid &= !conflicts.get(routes[i]).contains(other);
+                    }
+                    set.add(routes[i]);
+                }
+            }
+            if (valid) {
+                compatible.add(set);
+            }
+        }
+        Set<TreeSet<String>> maximal = new HashSet<TreeSet<String>>();
+        for (TreeSet<String> set : compatible) {
+            boolean contained = false;
+            for (TreeSet<String> other : compatible) {
+                contained |= other.size() > set.size() && other.containsAll(set);
+            }
+            if (!contained) {
+                maximal.add(set);
+            }
+        }
+        return maximal;
+    }
+
+    //____ COMPATIBLE ROUTE SETS ____
+    /** The maximal sets of compatible routes of a few routes are those found by brute force.
+     */
+    @Test
+    public void test_compatibleSets() {
+        // R00 - R01 - R02 collide in a chain, R03 collides with none
+        Map<String, Set<String>> conflicts = conflicts(4, new int[][] {{0, 1}, {1, 2}});
+        List<TreeSet<String>> sets = new PhasePlanner(conflicts).compatibleSets();
+        assertEquals("[[R00, R02, R03], [R01, R03]]", new TreeSet<String>(toStrings(sets)).toString());
+        assertMaximalSets(conflicts, sets);
+        assertEquals(0, new PhasePlanner(conflicts(0, new int[0][])).compatibleSets().size());
+
+        Random random = new Random(46);
+        for (int n = 0; n < 200; n++) {
+            conflicts = randomConflicts(random, 1 + random.nextInt(11), random.nextDouble());
+            sets = new PhasePlanner(conflicts).compatibleSets();
+            assertMaximalSets(conflicts, sets);
+            assertEquals(bruteForceSets(conflicts), new HashSet<TreeSet<String>>(sets));
+            assertEquals(sets, new PhasePlanner(conflicts).compatibleSets());
+        }
+    }
+
+    /** The maximal sets of compatible routes span several words of the route bitsets
+     * on maps of more than 64 routes.
+     */
+    @Test
+    public void test_compatibleSetsWide() {
+        // 5 groups of 14 routes, each route colliding with all the routes of the other groups
+        List<int[]> pairs = new ArrayList<int[]>();
+        for (int i = 0; i < 70; i++) {
+            for (int j = i + 1; j < 70; j++) {
+                if (i / 14 != j / 14) {
+                    pairs.add(new int[] {i, j});
+                }
+            }
+        }
+        Map<String, Set<String>> conflicts = conflicts(70, pairs.toArray(new int[0][]));
+        List<TreeSet<String>> sets = new PhasePlanner(conflicts).compatibleSets();
+        assertEquals(5, sets.size());
+        for (TreeSet<String> set : sets) {
+            assertEquals(14, set.size());
+        }
+        assertMaximalSets(conflicts, sets);
+        assertEquals(5, new PhasePlanner(conflicts).plan().size());
+
+        conflicts = randomConflicts(new Random(64), 80, 0.85);
+        sets = new PhasePlanner(conflicts).compatibleSets();
+        assertTrue(sets.size() > 0);
+        assertMaximalSets(conflicts, sets);
+    }
+
+    private List<String> toStrings(List<TreeSet<String>> sets) {
+        List<String> strings = new ArrayList<String>();
+        for (TreeSet<String> set : sets) {
+            strings.add(set.toString());
+        }
+        return strings;
+    }
+}